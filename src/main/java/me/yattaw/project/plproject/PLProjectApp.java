@@ -2,6 +2,7 @@ package me.yattaw.project.plproject;
 
 import com.formdev.flatlaf.FlatDarkLaf;
 import me.yattaw.project.plproject.obf.ObfData;
+import me.yattaw.project.plproject.service.ObfuscationService;
 import me.yattaw.project.plproject.ui.PLProjectUIManager;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
@@ -19,7 +20,10 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import java.awt.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -28,7 +32,34 @@ import java.util.jar.JarOutputStream;
 
 public class PLProjectApp {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // Headless service mode: --serve [port] [--profiles <dir>] [--libraries <path>[:<path>...]]
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = 8085;
+            Path profileDirectory = null;
+            List<Path> libraries = new ArrayList<>();
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--profiles" -> profileDirectory = Paths.get(args[++i]);
+                    case "--libraries" -> {
+                        for (String library : args[++i].split(File.pathSeparator)) {
+                            libraries.add(Paths.get(library));
+                        }
+                    }
+                    default -> port = Integer.parseInt(args[i]);
+                }
+            }
+
+            int workers = Runtime.getRuntime().availableProcessors();
+            ObfuscationService service = new ObfuscationService(port, workers, workers * 8);
+            if (profileDirectory != null) {
+                service.setProfileDirectory(profileDirectory);
+            }
+            service.setLibraryClasspath(libraries);
+            service.start();
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(new FlatDarkLaf());
@@ -0,0 +1,375 @@
+package me.yattaw.project.plproject.obf;
+
+import lombok.Getter;
+import me.yattaw.project.plproject.util.InstructionHelper;
+import me.yattaw.project.plproject.util.MyersDiff;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+public class BytecodeDiff {
+
+    // Unchanged lines kept around each change
+    private static final int CONTEXT_LINES = 3;
+
+    /**
+     * A line of a hunk. {@code EQUAL} lines appear on both sides, {@code DELETE} lines only
+     * on the original side and {@code INSERT} lines only on the obfuscated side.
+     */
+    public record Line(MyersDiff.Operation operation, String text) {
+    }
+
+    /**
+     * A run of changes with up to {@value #CONTEXT_LINES} unchanged lines around it.
+     * Line numbers are 1-based instruction indices.
+     */
+    public record Hunk(int leftStart, int leftLength, int rightStart, int rightLength, List<Line> lines) {
+
+        public String getHeader() {
+            return "@@ -" + leftStart + "," + leftLength + " +" + rightStart + "," + rightLength + " @@";
+        }
+    }
+
+    /**
+     * Diff of a single method between the original and obfuscated jar. Only the hunks are
+     * kept, so memory grows with the size of the change rather than the size of the method.
+     */
+    @Getter
+    public static class MethodDiff {
+        private final String owner;
+        private final String name;
+        private final String obfuscatedName;
+        private final String descriptor;
+        private final List<Hunk> hunks;
+
+        MethodDiff(String owner, String name, String obfuscatedName, String descriptor, List<Hunk> hunks) {
+            this.owner = owner;
+            this.name = name;
+            this.obfuscatedName = obfuscatedName;
+            this.descriptor = descriptor;
+            this.hunks = hunks;
+        }
+
+        public String getTitle() {
+            String title = owner.replace('/', '.') + "." + name + descriptor;
+            if (obfuscatedName != null && !obfuscatedName.equals(name)) {
+                title += " -> " + obfuscatedName;
+            }
+            return title;
+        }
+
+        @Override
+        public String toString() {
+            return getTitle();
+        }
+    }
+
+    /**
+     * Result of diffing two jars. Only renamed methods and methods with at least one
+     * changed instruction are kept.
+     */
+    @Getter
+    public static class JarDiff {
+        private final List<MethodDiff> changedMethods;
+        private final int comparedMethods;
+
+        JarDiff(List<MethodDiff> changedMethods, int comparedMethods) {
+            this.changedMethods = changedMethods;
+            this.comparedMethods = comparedMethods;
+        }
+
+        /**
+         * Writes the diff in a unified style, one block per changed method.
+         *
+         * @param writer Destination for the exported diff.
+         */
+        public void export(PrintWriter writer) {
+            writer.println("# " + changedMethods.size() + " of " + comparedMethods + " methods changed");
+            for (MethodDiff methodDiff : changedMethods) {
+                writer.println("@@@ " + methodDiff.getTitle());
+                for (Hunk hunk : methodDiff.getHunks()) {
+                    writer.println(hunk.getHeader());
+                    for (Line line : hunk.lines()) {
+                        switch (line.operation()) {
+                            case EQUAL -> writer.println("  " + line.text());
+                            case DELETE -> writer.println("- " + line.text());
+                            case INSERT -> writer.println("+ " + line.text());
+                        }
+                    }
+                }
+            }
+            writer.flush();
+        }
+    }
+
+    private final Map<String, String> reverseMapping;
+
+    /**
+     * @param reverseMapping Lookup from obfuscated member keys to original names,
+     *                       see {@link Obfuscator#getReverseNameMapping()}.
+     */
+    public BytecodeDiff(Map<String, String> reverseMapping) {
+        this.reverseMapping = reverseMapping;
+    }
+
+    /**
+     * Compares every method of the original jar with its counterpart in the obfuscated jar.
+     * Classes and methods are processed in parallel on the common fork-join pool.
+     *
+     * @param originalPath   Path to the input JAR file.
+     * @param obfuscatedPath Path to the JAR written by {@link Obfuscator#obfuscateJar(String)}.
+     * @return The changed methods.
+     * @throws IOException If either JAR file cannot be read.
+     */
+    public JarDiff compare(String originalPath, String obfuscatedPath) throws IOException {
+        try (JarFile original = new JarFile(originalPath);
+             JarFile obfuscated = new JarFile(obfuscatedPath)) {
+
+            List<String> classEntries = original.stream()
+                    .map(JarEntry::getName)
+                    .filter(name -> name.endsWith(".class"))
+                    .collect(Collectors.toList());
+
+            // JarFile reads are synchronized internally, so entries can be inflated from worker threads.
+            // Each class is diffed as soon as it is read, so only the hunks of changed methods outlive it
+            AtomicInteger comparedMethods = new AtomicInteger();
+            List<MethodDiff> changed = classEntries.parallelStream()
+                    .flatMap(name -> {
+                        List<MethodPair> pairs = pairMethods(readClass(original, name), readClass(obfuscated, name));
+                        comparedMethods.addAndGet(pairs.size());
+                        return pairs.stream().map(this::diffMethod).filter(Objects::nonNull);
+                    })
+                    .sorted(Comparator.comparing(MethodDiff::getTitle))
+                    .collect(Collectors.toList());
+
+            return new JarDiff(changed, comparedMethods.get());
+        }
+    }
+
+    private record MethodPair(String owner, MethodNode left, MethodNode right) {
+    }
+
+    private static ClassNode readClass(JarFile jarFile, String name) {
+        JarEntry entry = jarFile.getJarEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream is = jarFile.getInputStream(entry)) {
+            ClassNode classNode = new ClassNode();
+            // Frames and debug info are recomputed on write, so they are not part of the structural diff
+            new ClassReader(is).accept(classNode, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+            return classNode;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<MethodPair> pairMethods(ClassNode left, ClassNode right) {
+        List<MethodPair> pairs = new ArrayList<>();
+        String owner = left != null ? left.name : right != null ? right.name : null;
+        if (owner == null) {
+            return pairs;
+        }
+
+        Map<String, MethodNode> remaining = new LinkedHashMap<>();
+        if (left != null) {
+            for (MethodNode method : left.methods) {
+                remaining.put(method.name + method.desc, method);
+            }
+        }
+        if (right != null) {
+            for (MethodNode method : right.methods) {
+                String originalName = reverseMapping.getOrDefault(method.name + method.desc, method.name);
+                pairs.add(new MethodPair(owner, remaining.remove(originalName + method.desc), method));
+            }
+        }
+        for (MethodNode method : remaining.values()) {
+            pairs.add(new MethodPair(owner, method, null));
+        }
+        return pairs;
+    }
+
+    private MethodDiff diffMethod(MethodPair pair) {
+        List<String> leftLines = normalize(pair.left(), false);
+        List<String> rightLines = normalize(pair.right(), true);
+
+        // Intern lines to ints so the diff compares by identity rather than by string
+        Map<String, Integer> tokens = new HashMap<>();
+        int[] left = tokenize(leftLines, tokens);
+        int[] right = tokenize(rightLines, tokens);
+
+        List<MyersDiff.Edit> edits = MyersDiff.diff(left, right);
+        boolean changed = pair.left() == null || pair.right() == null
+                || !pair.left().name.equals(pair.right().name)
+                || edits.stream().anyMatch(edit -> edit.operation() != MyersDiff.Operation.EQUAL);
+        if (!changed) {
+            return null;
+        }
+
+        MethodNode reference = pair.left() != null ? pair.left() : pair.right();
+        String name = pair.left() != null ? pair.left().name
+                : reverseMapping.getOrDefault(reference.name + reference.desc, reference.name);
+        String obfuscatedName = pair.right() != null ? pair.right().name : null;
+        return new MethodDiff(pair.owner(), name, obfuscatedName, reference.desc, toHunks(edits, leftLines, rightLines));
+    }
+
+    /**
+     * Groups an edit script into hunks, merging changes that are at most twice the context apart.
+     */
+    private static List<Hunk> toHunks(List<MyersDiff.Edit> edits, List<String> leftLines, List<String> rightLines) {
+        List<Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        while (i < edits.size()) {
+            // Find the next change
+            while (i < edits.size() && edits.get(i).operation() == MyersDiff.Operation.EQUAL) {
+                i++;
+            }
+            if (i == edits.size()) {
+                break;
+            }
+
+            int start = Math.max(0, i - CONTEXT_LINES);
+            int end = i;
+            int lastChange = i;
+            while (end < edits.size() && end - lastChange <= 2 * CONTEXT_LINES) {
+                if (edits.get(end).operation() != MyersDiff.Operation.EQUAL) {
+                    lastChange = end;
+                }
+                end++;
+            }
+            end = Math.min(edits.size(), lastChange + CONTEXT_LINES + 1);
+
+            List<Line> lines = new ArrayList<>(end - start);
+            int leftStart = -1;
+            int rightStart = -1;
+            int leftLength = 0;
+            int rightLength = 0;
+            for (int j = start; j < end; j++) {
+                MyersDiff.Edit edit = edits.get(j);
+                if (edit.leftIndex() >= 0) {
+                    leftStart = leftStart < 0 ? edit.leftIndex() : leftStart;
+                    leftLength++;
+                }
+                if (edit.rightIndex() >= 0) {
+                    rightStart = rightStart < 0 ? edit.rightIndex() : rightStart;
+                    rightLength++;
+                }
+                String text = edit.operation() == MyersDiff.Operation.INSERT
+                        ? rightLines.get(edit.rightIndex()) : leftLines.get(edit.leftIndex());
+                lines.add(new Line(edit.operation(), text));
+            }
+            hunks.add(new Hunk(leftStart + 1, leftLength, rightStart + 1, rightLength, lines));
+            i = end;
+        }
+        return hunks;
+    }
+
+    private static int[] tokenize(List<String> lines, Map<String, Integer> tokens) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = tokens.computeIfAbsent(lines.get(i), key -> tokens.size());
+        }
+        return result;
+    }
+
+    /**
+     * Renders a method as one line per instruction. Labels are numbered by order of
+     * appearance and member names on the obfuscated side are mapped back to their
+     * original names, so only real structural changes show up in the diff.
+     */
+    private List<String> normalize(MethodNode method, boolean obfuscated) {
+        if (method == null) {
+            return Collections.emptyList();
+        }
+
+        Map<LabelNode, Integer> labels = new HashMap<>();
+        for (AbstractInsnNode insn : method.instructions) {
+            if (insn instanceof LabelNode labelNode) {
+                labels.put(labelNode, labels.size());
+            }
+        }
+
+        List<String> lines = new ArrayList<>(method.instructions.size());
+        for (AbstractInsnNode insn : method.instructions) {
+            String line = normalizeInstruction(insn, labels, obfuscated);
+            if (line != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private String normalizeInstruction(AbstractInsnNode insn, Map<LabelNode, Integer> labels, boolean obfuscated) {
+        String opcode = insn.getOpcode() >= 0 ? InstructionHelper.getOpcodeName(insn.getOpcode()) : null;
+
+        if (insn instanceof LabelNode labelNode) {
+            return "L" + labels.get(labelNode) + ":";
+        } else if (insn instanceof LineNumberNode || insn instanceof FrameNode) {
+            return null;
+        } else if (insn instanceof MethodInsnNode methodInsn) {
+            return opcode + " " + methodInsn.owner + "." + methodName(methodInsn.name, methodInsn.desc, obfuscated) + methodInsn.desc;
+        } else if (insn instanceof FieldInsnNode fieldInsn) {
+            return opcode + " " + fieldInsn.owner + "." + fieldName(fieldInsn.name, fieldInsn.desc, obfuscated) + " " + fieldInsn.desc;
+        } else if (insn instanceof JumpInsnNode jumpInsn) {
+            return opcode + " L" + labels.get(jumpInsn.label);
+        } else if (insn instanceof VarInsnNode varInsn) {
+            return opcode + " " + varInsn.var;
+        } else if (insn instanceof IincInsnNode iincInsn) {
+            return opcode + " " + iincInsn.var + " " + iincInsn.incr;
+        } else if (insn instanceof IntInsnNode intInsn) {
+            return opcode + " " + intInsn.operand;
+        } else if (insn instanceof TypeInsnNode typeInsn) {
+            return opcode + " " + typeInsn.desc;
+        } else if (insn instanceof LdcInsnNode ldcInsn) {
+            return opcode + " " + formatConstant(ldcInsn.cst, obfuscated);
+        } else if (insn instanceof MultiANewArrayInsnNode arrayInsn) {
+            return opcode + " " + arrayInsn.desc + " " + arrayInsn.dims;
+        } else if (insn instanceof TableSwitchInsnNode switchInsn) {
+            return opcode + " " + switchInsn.min + ".." + switchInsn.max + " default L" + labels.get(switchInsn.dflt)
+                    + " " + switchInsn.labels.stream().map(l -> "L" + labels.get(l)).collect(Collectors.joining(","));
+        } else if (insn instanceof LookupSwitchInsnNode switchInsn) {
+            StringBuilder sb = new StringBuilder(opcode).append(" default L").append(labels.get(switchInsn.dflt));
+            for (int i = 0; i < switchInsn.keys.size(); i++) {
+                sb.append(' ').append(switchInsn.keys.get(i)).append(":L").append(labels.get(switchInsn.labels.get(i)));
+            }
+            return sb.toString();
+        } else if (insn instanceof InvokeDynamicInsnNode indyInsn) {
+            String args = Arrays.stream(indyInsn.bsmArgs)
+                    .map(arg -> formatConstant(arg, obfuscated))
+                    .collect(Collectors.joining(", "));
+            return opcode + " " + indyInsn.name + indyInsn.desc + " " + formatConstant(indyInsn.bsm, obfuscated) + " [" + args + "]";
+        }
+        return opcode != null ? opcode : insn.getClass().getSimpleName();
+    }
+
+    private String formatConstant(Object constant, boolean obfuscated) {
+        if (constant instanceof Handle handle) {
+            String name = handle.getTag() <= 4 // H_GETFIELD .. H_PUTSTATIC
+                    ? fieldName(handle.getName(), handle.getDesc(), obfuscated)
+                    : methodName(handle.getName(), handle.getDesc(), obfuscated);
+            return handle.getOwner() + "." + name + handle.getDesc() + " (" + handle.getTag() + ")";
+        } else if (constant instanceof String string) {
+            return "\"" + string + "\"";
+        }
+        return String.valueOf(constant);
+    }
+
+    private String methodName(String name, String descriptor, boolean obfuscated) {
+        return obfuscated ? reverseMapping.getOrDefault(name + descriptor, name) : name;
+    }
+
+    private String fieldName(String name, String descriptor, boolean obfuscated) {
+        return obfuscated ? reverseMapping.getOrDefault(name + " " + descriptor, name) : name;
+    }
+
+}
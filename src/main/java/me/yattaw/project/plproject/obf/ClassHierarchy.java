@@ -0,0 +1,191 @@
+package me.yattaw.project.plproject.obf;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact cache of the class hierarchy (super class, interfaces and interface flag per class).
+ * Classes from the loaded jar are added while it is read, anything else is resolved lazily
+ * by reading the class file header from the library classpath, then the system classpath,
+ * so no class is ever loaded. Types found on neither are recorded as unresolved, since frames
+ * computed from them would be wrong.
+ */
+public class ClassHierarchy {
+
+    private static final String OBJECT = "java/lang/Object";
+
+    private record ClassInfo(String superName, String[] interfaces, boolean isInterface) {
+    }
+
+    // Cached for types that cannot be found anywhere, treated as direct subclasses of Object
+    private static final ClassInfo UNKNOWN = new ClassInfo(OBJECT, new String[0], false);
+
+    private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+    private final Set<String> unresolvedTypes = ConcurrentHashMap.newKeySet();
+    private volatile ClassLoader libraryLoader = ClassLoader.getSystemClassLoader();
+
+    /**
+     * Sets the jars and directories the input jar depends on, so a thin jar's library types
+     * resolve to their real hierarchy. Must be set before any type is resolved.
+     *
+     * @param libraries Library jars or class directories.
+     */
+    public void setLibraryClasspath(List<Path> libraries) {
+        URL[] urls = new URL[libraries.size()];
+        for (int i = 0; i < urls.length; i++) {
+            try {
+                urls[i] = libraries.get(i).toUri().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid library path: " + libraries.get(i), e);
+            }
+        }
+        libraryLoader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader());
+    }
+
+    /**
+     * @return Types that were needed but found neither in the jar nor on any classpath, sorted.
+     */
+    public List<String> getUnresolvedTypes() {
+        List<String> types = new ArrayList<>(unresolvedTypes);
+        Collections.sort(types);
+        return types;
+    }
+
+    /**
+     * Opens the class file of a type outside the jar from the library or system classpath.
+     *
+     * @param name Internal name of the type.
+     * @return Stream of the class file, or {@code null} if it cannot be found.
+     */
+    public InputStream openClassFile(String name) {
+        return libraryLoader.getResourceAsStream(name + ".class");
+    }
+
+    /**
+     * Records a class read from the jar.
+     *
+     * @param name       Internal name of the class.
+     * @param access     Access flags of the class.
+     * @param superName  Internal name of the super class, {@code null} for Object.
+     * @param interfaces Internal names of the directly implemented interfaces.
+     */
+    public void addClass(String name, int access, String superName, String[] interfaces) {
+        classes.put(name, new ClassInfo(superName, interfaces != null ? interfaces : new String[0],
+                (access & Opcodes.ACC_INTERFACE) != 0));
+    }
+
+    public boolean isInterface(String name) {
+        return resolve(name).isInterface();
+    }
+
+    /**
+     * @return Internal name of the super class, or {@code null} for Object.
+     */
+    public String getSuperName(String name) {
+        return OBJECT.equals(name) ? null : resolve(name).superName();
+    }
+
+    /**
+     * @return Internal names of the directly implemented interfaces.
+     */
+    public String[] getInterfaces(String name) {
+        return resolve(name).interfaces().clone();
+    }
+
+    /**
+     * Returns whether a value of type {@code source} can be assigned to {@code target}.
+     */
+    public boolean isAssignableFrom(String target, String source) {
+        if (target.equals(source) || OBJECT.equals(target)) {
+            return true;
+        }
+        for (String type : getSupertypes(source)) {
+            if (type.equals(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mirrors {@code ClassWriter#getCommonSuperClass} using the cached hierarchy.
+     */
+    public String getCommonSuperClass(String first, String second) {
+        if (isAssignableFrom(first, second)) {
+            return first;
+        }
+        if (isAssignableFrom(second, first)) {
+            return second;
+        }
+        if (isInterface(first) || isInterface(second)) {
+            return OBJECT;
+        }
+
+        String type = first;
+        do {
+            type = getSuperName(type);
+            if (type == null) {
+                return OBJECT;
+            }
+        } while (!isAssignableFrom(type, second));
+        return type;
+    }
+
+    /**
+     * Returns every super class and interface of a type, transitively.
+     */
+    private Set<String> getSupertypes(String name) {
+        Set<String> supertypes = new LinkedHashSet<>();
+        collectSupertypes(name, supertypes);
+        return supertypes;
+    }
+
+    private void collectSupertypes(String name, Set<String> supertypes) {
+        ClassInfo info = resolve(name);
+        if (info.superName() != null && supertypes.add(info.superName())) {
+            collectSupertypes(info.superName(), supertypes);
+        }
+        for (String iface : info.interfaces()) {
+            if (supertypes.add(iface)) {
+                collectSupertypes(iface, supertypes);
+            }
+        }
+    }
+
+    private ClassInfo resolve(String name) {
+        if (OBJECT.equals(name)) {
+            return new ClassInfo(null, new String[0], false);
+        }
+        return classes.computeIfAbsent(name, this::readFromClasspath);
+    }
+
+    private ClassInfo readFromClasspath(String name) {
+        try (InputStream is = openClassFile(name)) {
+            if (is == null) {
+                unresolvedTypes.add(name);
+                return UNKNOWN;
+            }
+            ClassReader classReader = new ClassReader(is);
+            return new ClassInfo(classReader.getSuperName(), classReader.getInterfaces(),
+                    (classReader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+        } catch (IOException e) {
+            unresolvedTypes.add(name);
+            return UNKNOWN;
+        }
+    }
+
+}
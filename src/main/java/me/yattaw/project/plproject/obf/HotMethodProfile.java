@@ -0,0 +1,264 @@
+package me.yattaw.project.plproject.obf;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.Getter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Execution-sample counts per method, read from a JFR recording or a plain hot-method list.
+ * <p>
+ * The list format is one method per line, {@code owner.name(desc) samples}, with the owner
+ * in internal or dotted form and {@code #} starting a comment. For recordings, the top frame
+ * of every {@code jdk.ExecutionSample} event is counted.
+ */
+public class HotMethodProfile {
+
+    // Rough runtime cost assumed for a method reading XOR-obfuscated fields, relative to its self time
+    private static final double XOR_OVERHEAD = 0.05;
+
+    /**
+     * A hot method whose XOR-obfuscated field references were kept plain.
+     */
+    public record Exemption(String method, long samples, double sampleShare, List<String> fields,
+                            double estimatedOverhead) {
+    }
+
+    @Getter
+    public static class Report {
+        private final List<Exemption> exemptions;
+        private final int hotMethods;
+        private final long totalSamples;
+        // Field keys (name + " " + desc) kept out of XOR obfuscation for the run this report belongs to
+        private final Set<String> exemptFields;
+
+        Report(List<Exemption> exemptions, int hotMethods, long totalSamples, Set<String> exemptFields) {
+            this.exemptions = exemptions;
+            this.hotMethods = hotMethods;
+            this.totalSamples = totalSamples;
+            this.exemptFields = Collections.unmodifiableSet(exemptFields);
+        }
+
+        /**
+         * @return Estimated runtime overhead avoided, as a fraction of total sampled CPU time.
+         */
+        public double getEstimatedOverheadAvoided() {
+            return exemptions.stream().mapToDouble(Exemption::estimatedOverhead).sum();
+        }
+
+        /**
+         * @return One line summary of the report.
+         */
+        public String getSummary() {
+            return String.format("%d hot methods in %d samples, %d fields exempted from XOR obfuscation, ~%.2f%% overhead avoided",
+                    hotMethods, totalSamples, exemptFields.size(), getEstimatedOverheadAvoided() * 100);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d hot methods in %d samples, %d fields exempted from XOR obfuscation%n",
+                    hotMethods, totalSamples, exemptFields.size()));
+            for (Exemption exemption : exemptions) {
+                sb.append(String.format("%6.2f%% %8d  %s  kept plain: %s, avoids ~%.2f%%%n",
+                        exemption.sampleShare() * 100, exemption.samples(), exemption.method(),
+                        String.join(", ", exemption.fields()), exemption.estimatedOverhead() * 100));
+            }
+            if (!exemptions.isEmpty()) {
+                sb.append(String.format("Estimated runtime overhead avoided: ~%.2f%% of sampled CPU time%n",
+                        getEstimatedOverheadAvoided() * 100));
+            }
+            return sb.toString();
+        }
+    }
+
+    // Keyed by owner + "." + name + desc, owner in internal form
+    private final Map<String, Long> samples;
+    @Getter
+    private final long totalSamples;
+
+    private HotMethodProfile(Map<String, Long> samples) {
+        this.samples = samples;
+        this.totalSamples = samples.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Loads a profile, as a JFR recording if the file ends in {@code .jfr} and as a hot-method list otherwise.
+     *
+     * @param path Path to the profile.
+     * @return The loaded profile.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If a line of a hot-method list is malformed.
+     */
+    public static HotMethodProfile load(Path path) throws IOException {
+        return path.getFileName().toString().endsWith(".jfr") ? loadRecording(path) : loadList(path);
+    }
+
+    private static HotMethodProfile loadRecording(Path path) throws IOException {
+        Map<String, Long> samples = new HashMap<>();
+        try (RecordingFile recording = new RecordingFile(path)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                if (!event.getEventType().getName().equals("jdk.ExecutionSample")) {
+                    continue;
+                }
+                RecordedStackTrace stackTrace = event.getStackTrace();
+                if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+                    continue;
+                }
+                RecordedFrame frame = stackTrace.getFrames().get(0);
+                if (!frame.isJavaFrame()) {
+                    continue;
+                }
+                RecordedMethod method = frame.getMethod();
+                String key = method.getType().getName().replace('.', '/') + "." + method.getName() + method.getDescriptor();
+                samples.merge(key, 1L, Long::sum);
+            }
+        }
+        return new HotMethodProfile(samples);
+    }
+
+    private static HotMethodProfile loadList(Path path) throws IOException {
+        Map<String, Long> samples = new HashMap<>();
+        List<String> lines = Files.readAllLines(path);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+            int descStart = tokens[0].indexOf('(');
+            int nameStart = descStart > 0 ? tokens[0].lastIndexOf('.', descStart) : -1;
+            if (tokens.length != 2 || nameStart <= 0) {
+                // The line itself is left out, profiles may come from untrusted callers of the service
+                throw new IllegalArgumentException("Invalid hot method on line " + (i + 1));
+            }
+            String owner = tokens[0].substring(0, nameStart).replace('.', '/');
+            try {
+                samples.merge(owner + tokens[0].substring(nameStart), Long.parseLong(tokens[1]), Long::sum);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid sample count on line " + (i + 1));
+            }
+        }
+        return new HotMethodProfile(samples);
+    }
+
+    /**
+     * Returns the hottest methods that together account for the given share of all samples.
+     *
+     * @param coverage Share of samples to cover, between 0 and 1.
+     * @return Method keys ({@code owner.name + desc}) with their sample counts, hottest first.
+     */
+    public LinkedHashMap<String, Long> getHotMethods(double coverage) {
+        LinkedHashMap<String, Long> hot = new LinkedHashMap<>();
+        long covered = 0;
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(samples.entrySet());
+        sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        for (Map.Entry<String, Long> entry : sorted) {
+            if (covered >= coverage * totalSamples) {
+                break;
+            }
+            hot.put(entry.getKey(), entry.getValue());
+            covered += entry.getValue();
+        }
+        return hot;
+    }
+
+    /**
+     * Finds the XOR-selected fields referenced by hot methods, which a run keeps out of XOR
+     * obfuscation so they keep their names and initializers and are left out of the {@code <clinit>}
+     * XOR writes. Method renaming is kept. The selections themselves are not changed, the run checks
+     * {@link Report#getExemptFields()} instead. Hot methods are read from the jar by owner, but field
+     * selections are keyed by name and descriptor only, so a field with the same signature in another
+     * class is exempted as well.
+     *
+     * @param jarFile             The jar being obfuscated.
+     * @param fieldNodeObfDataMap Field selections of the obfuscator, only read.
+     * @param coverage            Share of samples treated as hot.
+     * @return Report of the exempted fields per hot method, holding the exempt field keys.
+     * @throws IOException If a class of a hot method cannot be read.
+     */
+    public Report exemptHotMethods(JarFile jarFile, Map<String, ObfData> fieldNodeObfDataMap,
+                                   double coverage) throws IOException {
+        Map<String, Long> hot = getHotMethods(coverage);
+        List<Exemption> exemptions = new ArrayList<>();
+        Set<String> exempted = new HashSet<>();
+        Map<String, ClassNode> classes = new HashMap<>();
+        for (Map.Entry<String, Long> entry : hot.entrySet()) {
+            String method = entry.getKey();
+            int nameStart = method.lastIndexOf('.', method.indexOf('('));
+            String owner = method.substring(0, nameStart);
+            MethodNode methodNode = findMethod(jarFile, classes, owner, method.substring(nameStart + 1));
+            if (methodNode == null) {
+                continue;
+            }
+
+            Set<String> fields = new LinkedHashSet<>();
+            for (AbstractInsnNode insn : methodNode.instructions) {
+                if (insn instanceof FieldInsnNode fieldInsn) {
+                    String key = fieldInsn.name + " " + fieldInsn.desc;
+                    ObfData obfData = fieldNodeObfDataMap.get(key);
+                    if (obfData != null && obfData.isXorObfuscation()) {
+                        exempted.add(key);
+                        fields.add(fieldInsn.name);
+                    }
+                }
+            }
+            if (!fields.isEmpty()) {
+                double share = entry.getValue() / (double) totalSamples;
+                String displayName = owner.replace('/', '.') + method.substring(nameStart);
+                exemptions.add(new Exemption(displayName, entry.getValue(), share, new ArrayList<>(fields),
+                        share * XOR_OVERHEAD));
+            }
+        }
+        return new Report(exemptions, hot.size(), totalSamples, exempted);
+    }
+
+    private static MethodNode findMethod(JarFile jarFile, Map<String, ClassNode> classes, String owner,
+                                         String method) throws IOException {
+        if (!classes.containsKey(owner)) {
+            JarEntry entry = jarFile.getJarEntry(owner + ".class");
+            ClassNode classNode = null;
+            if (entry != null) {
+                try (InputStream is = jarFile.getInputStream(entry)) {
+                    classNode = new ClassNode();
+                    new ClassReader(is).accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                }
+            }
+            classes.put(owner, classNode);
+        }
+
+        ClassNode classNode = classes.get(owner);
+        if (classNode == null) {
+            return null;
+        }
+        for (MethodNode methodNode : classNode.methods) {
+            if (method.equals(methodNode.name + methodNode.desc)) {
+                return methodNode;
+            }
+        }
+        return null;
+    }
+
+}
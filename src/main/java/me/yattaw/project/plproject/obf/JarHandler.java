@@ -11,6 +11,8 @@ import javax.swing.tree.DefaultTreeModel;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -27,15 +29,14 @@ public class JarHandler {
      */
     public void loadClassesFromJar(Obfuscator obfuscator, DefaultMutableTreeNode root, JTree tree, String jarPath) throws IOException {
         root.removeAllChildren();  // Clear previous data
+        Map<String, Integer> exclusions = new HashMap<>();
 
         // Open the JAR file
         try (JarInputStream jarStream = new JarInputStream(new FileInputStream(jarPath))) {
             JarEntry entry;
             while ((entry = jarStream.getNextJarEntry()) != null) {
                 if (entry.getName().endsWith(".class")) {
-                    ClassNode classNode = new ClassNode();
-                    ClassReader classReader = new ClassReader(jarStream);
-                    classReader.accept(classNode, 0);
+                    ClassNode classNode = readClass(obfuscator, jarStream);
 
                     // Create a node for the class
                     DefaultMutableTreeNode classTreeNode = new DefaultMutableTreeNode(classNode.name.replace('/', '.'));
@@ -46,11 +47,6 @@ public class JarHandler {
                     classTreeNode.add(methodsNode);
                     for (MethodNode method : classNode.methods) {
                         methodsNode.add(new DefaultMutableTreeNode(method.name + method.desc));
-
-                        // Initialize ObfData for each MethodNode and add it to the nodeObfDataMap
-                        ObfData methodObfData = new ObfData();
-                        obfuscator.getNodeObfDataMap().put(method.name + method.desc, methodObfData);
-                        obfuscator.getMethodNodeMap().put(method.name + method.desc, method);
                     }
 
                     // Add fields
@@ -58,12 +54,9 @@ public class JarHandler {
                     classTreeNode.add(fieldsNode);
                     for (FieldNode field : classNode.fields) {
                         fieldsNode.add(new DefaultMutableTreeNode(field.name + " " + field.desc));
-
-                        // Initialize ObfData for each FieldNode and add it to the fieldNodeObfDataMap
-                        ObfData fieldObfData = new ObfData();
-                        obfuscator.getFieldNodeObfDataMap().put(field.name + " " + field.desc, fieldObfData);
-                        obfuscator.getFieldNodeMap().put(field.name + " " + field.desc, field);
                     }
+
+                    registerClass(obfuscator, classNode, exclusions);
                 }
             }
         }
@@ -72,6 +65,104 @@ public class JarHandler {
         ((DefaultTreeModel) tree.getModel()).reload();
     }
 
+    /**
+     * Loads classes from a JAR file without building a tree, for headless runs.
+     *
+     * @param obfuscator Obfuscator whose maps are populated.
+     * @param jarPath    Path to the JAR file.
+     * @throws IOException If the JAR file cannot be read.
+     */
+    public void loadClasses(Obfuscator obfuscator, String jarPath) throws IOException {
+        Map<String, Integer> exclusions = new HashMap<>();
+        try (JarInputStream jarStream = new JarInputStream(new FileInputStream(jarPath))) {
+            JarEntry entry;
+            while ((entry = jarStream.getNextJarEntry()) != null) {
+                if (entry.getName().endsWith(".class")) {
+                    ClassNode classNode = readClass(obfuscator, jarStream);
+                    registerClass(obfuscator, classNode, exclusions);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the next class from the stream. In low-memory mode code, debug info and frames
+     * are skipped, since only member names and the hierarchy are kept.
+     *
+     * @param obfuscator Obfuscator whose mode decides what is read.
+     * @param jarStream  Stream positioned at a class entry.
+     * @return The parsed class.
+     * @throws IOException If the class cannot be read.
+     */
+    private ClassNode readClass(Obfuscator obfuscator, JarInputStream jarStream) throws IOException {
+        ClassNode classNode = new ClassNode();
+        ClassReader classReader = new ClassReader(jarStream);
+        int parsingOptions = obfuscator.isLowMemoryMode()
+                ? ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES
+                : 0;
+        classReader.accept(classNode, parsingOptions);
+        return classNode;
+    }
+
+    /**
+     * Registers the methods and fields of a class with the obfuscator. Members are keyed by
+     * name and descriptor only, so rule results for a key are merged across every class that
+     * declares it: includes accumulate, and excludes seen so far in any class remove them again.
+     *
+     * @param obfuscator Obfuscator whose maps are populated.
+     * @param classNode  The class to register.
+     * @param exclusions Transforms excluded per member key by the classes registered so far.
+     */
+    private void registerClass(Obfuscator obfuscator, ClassNode classNode, Map<String, Integer> exclusions) {
+        obfuscator.getClassHierarchy().addClass(classNode.name, classNode.access,
+                classNode.superName, classNode.interfaces.toArray(new String[0]));
+
+        // Resolve the owner part of the rules once per class
+        RuleSet.ClassRules classRules = obfuscator.getRuleSet() != null
+                ? obfuscator.getRuleSet().forClass(classNode.name)
+                : null;
+
+        for (MethodNode method : classNode.methods) {
+            // Initialize ObfData for each MethodNode and add it to the nodeObfDataMap
+            String key = method.name + method.desc;
+            ObfData methodObfData = obfuscator.getNodeObfDataMap().computeIfAbsent(key, k -> new ObfData());
+            if (classRules != null) {
+                applySelection(methodObfData, key, classRules.resolveMethod(method.name, method.desc, method.access), exclusions);
+            }
+            if (!obfuscator.isLowMemoryMode()) {
+                obfuscator.getMethodNodeMap().put(key, method);
+            }
+        }
+
+        for (FieldNode field : classNode.fields) {
+            // Initialize ObfData for each FieldNode and add it to the fieldNodeObfDataMap
+            String key = field.name + " " + field.desc;
+            ObfData fieldObfData = obfuscator.getFieldNodeObfDataMap().computeIfAbsent(key, k -> new ObfData());
+            if (classRules != null) {
+                applySelection(fieldObfData, key, classRules.resolveField(field.name, field.desc, field.access), exclusions);
+            }
+            if (!obfuscator.isLowMemoryMode()) {
+                obfuscator.getFieldNodeMap().put(key, field);
+            }
+        }
+    }
+
+    private void applySelection(ObfData obfData, String key, RuleSet.Selection selection, Map<String, Integer> exclusions) {
+        int exclude = selection.exclude() == 0
+                ? exclusions.getOrDefault(key, 0)
+                : exclusions.merge(key, selection.exclude(), (a, b) -> a | b);
+        int transforms = (currentTransforms(obfData) | selection.include()) & ~exclude;
+        obfData.setNameObfuscation((transforms & RuleSet.NAME) != 0);
+        obfData.setXorObfuscation((transforms & RuleSet.XOR) != 0);
+        obfData.setStringObfuscation((transforms & RuleSet.STRING) != 0);
+    }
+
+    private int currentTransforms(ObfData obfData) {
+        return (obfData.isNameObfuscation() ? RuleSet.NAME : 0)
+                | (obfData.isXorObfuscation() ? RuleSet.XOR : 0)
+                | (obfData.isStringObfuscation() ? RuleSet.STRING : 0);
+    }
+
     /**
      * Finds a child node with the specified name under the given parent node.
      *
@@ -0,0 +1,149 @@
+package me.yattaw.project.plproject.obf;
+
+import lombok.Getter;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A single obfuscation run scheduled by {@link ObfuscationScheduler}. All progress fields are
+ * written by the worker thread and may be read from any thread.
+ */
+public class ObfuscationJob implements ObfuscationProgress {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    // Minimum time between two progress updates pushed to the listener
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Getter
+    private final String jarPath;
+    @Getter
+    private final Obfuscator obfuscator;
+    private final Consumer<ObfuscationJob> listener;
+
+    // Leaving QUEUED is decided by compareAndSet, so a job is either cancelled or started, never both
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    @Getter
+    private volatile int processedClasses;
+    @Getter
+    private volatile int totalClasses;
+    @Getter
+    private volatile Throwable failure;
+
+    private volatile boolean cancelRequested;
+    private volatile long startNanos;
+    private volatile long lastUpdateNanos;
+    private volatile Future<?> future;
+
+    ObfuscationJob(String jarPath, Obfuscator obfuscator, Consumer<ObfuscationJob> listener) {
+        this.jarPath = jarPath;
+        this.obfuscator = obfuscator;
+        this.listener = listener;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    void run() {
+        if (cancelRequested) {
+            if (state.compareAndSet(State.QUEUED, State.CANCELLED)) {
+                listener.accept(this);
+            }
+            return;
+        }
+
+        startNanos = System.nanoTime();
+        if (!state.compareAndSet(State.QUEUED, State.RUNNING)) {
+            // cancel() won the race and already notified the listener
+            return;
+        }
+        listener.accept(this);
+        try {
+            obfuscator.obfuscateJar(jarPath, this);
+            finish(State.COMPLETED);
+        } catch (CancellationException e) {
+            finish(State.CANCELLED);
+        } catch (Throwable t) {
+            // Errors too (e.g. OutOfMemoryError on a large jar), otherwise the future swallows them
+            // and the job never leaves RUNNING
+            failure = t;
+            finish(State.FAILED);
+        }
+    }
+
+    private void finish(State state) {
+        this.state.set(state);
+        listener.accept(this);
+    }
+
+    /**
+     * Requests cancellation. A queued job never starts, a running job stops before its next class.
+     */
+    public void cancel() {
+        cancelRequested = true;
+        if (state.compareAndSet(State.QUEUED, State.CANCELLED)) {
+            Future<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            listener.accept(this);
+        }
+    }
+
+    public boolean isDone() {
+        State state = this.state.get();
+        return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    @Override
+    public void onProgress(int processedClasses, int totalClasses) {
+        this.processedClasses = processedClasses;
+        this.totalClasses = totalClasses;
+
+        // Throttle updates so large jars don't flood the listener
+        long now = System.nanoTime();
+        if (now - lastUpdateNanos >= UPDATE_INTERVAL_NANOS || processedClasses == totalClasses) {
+            lastUpdateNanos = now;
+            listener.accept(this);
+        }
+    }
+
+    /**
+     * @return Classes processed per second since the job started.
+     */
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - startNanos;
+        if (state.get() == State.QUEUED || elapsed <= 0) {
+            return 0;
+        }
+        return processedClasses / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return Estimated seconds until the job finishes, or -1 if not yet known.
+     */
+    public long getEtaSeconds() {
+        double throughput = getThroughput();
+        if (throughput <= 0) {
+            return -1;
+        }
+        return Math.round((totalClasses - processedClasses) / throughput);
+    }
+
+}
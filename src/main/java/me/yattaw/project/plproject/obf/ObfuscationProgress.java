@@ -0,0 +1,27 @@
+package me.yattaw.project.plproject.obf;
+
+/**
+ * Receives progress from {@link Obfuscator#obfuscateJar(String, ObfuscationProgress)} and
+ * lets the caller cancel the run between classes.
+ */
+public interface ObfuscationProgress {
+
+    ObfuscationProgress NONE = (processedClasses, totalClasses) -> {
+    };
+
+    /**
+     * Called after each class has been written.
+     *
+     * @param processedClasses Number of classes written so far.
+     * @param totalClasses     Number of classes in the JAR.
+     */
+    void onProgress(int processedClasses, int totalClasses);
+
+    /**
+     * Checked before each class, a cancelled run stops and deletes the partial output.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+
+}
@@ -0,0 +1,90 @@
+package me.yattaw.project.plproject.obf;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs obfuscation jobs on background threads. Jobs beyond the concurrency limit wait
+ * in submission order.
+ */
+public class ObfuscationScheduler {
+
+    private final ThreadPoolExecutor executor;
+    private final List<ObfuscationJob> jobs = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param maxConcurrentJobs Maximum number of jobs running at once.
+     */
+    public ObfuscationScheduler(int maxConcurrentJobs) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "obfuscation-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a job for the given JAR. The job runs on a snapshot of the obfuscator, so selections
+     * edited after submitting apply to the next job only.
+     *
+     * @param jarPath    Path to the input JAR file.
+     * @param obfuscator Obfuscator holding the selections for this JAR.
+     * @param listener   Notified from the worker thread whenever the job's state or progress changes.
+     * @return The queued job, whose obfuscator holds the snapshot and the names generated by the run.
+     * @throws IllegalStateException If a job for the same JAR is still queued or running.
+     */
+    public ObfuscationJob submit(String jarPath, Obfuscator obfuscator, Consumer<ObfuscationJob> listener) {
+        // Two jobs for the same jar would write the same output file
+        if (isActive(jarPath)) {
+            throw new IllegalStateException("A job for " + jarPath + " is already queued or running");
+        }
+        jobs.removeIf(ObfuscationJob::isDone);
+
+        ObfuscationJob job = new ObfuscationJob(jarPath, obfuscator.snapshot(), listener);
+        jobs.add(job);
+        job.setFuture(executor.submit(job::run));
+        return job;
+    }
+
+    /**
+     * @param jarPath Path to the input JAR file.
+     * @return Whether a job for the JAR is still queued or running, and so may be writing its output.
+     */
+    public boolean isActive(String jarPath) {
+        for (ObfuscationJob job : jobs) {
+            if (job.getJarPath().equals(jarPath) && !job.isDone()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getMaxConcurrentJobs() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Changes the concurrency limit. Running jobs are not interrupted when it shrinks.
+     *
+     * @param maxConcurrentJobs Maximum number of jobs running at once.
+     */
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        // The core size must never exceed the maximum, so order the two updates accordingly
+        if (maxConcurrentJobs > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxConcurrentJobs);
+            executor.setCorePoolSize(maxConcurrentJobs);
+        } else {
+            executor.setCorePoolSize(maxConcurrentJobs);
+            executor.setMaximumPoolSize(maxConcurrentJobs);
+        }
+    }
+
+}
@@ -1,17 +1,20 @@
 package me.yattaw.project.plproject.obf;
 
 import lombok.Getter;
+import lombok.Setter;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -27,6 +30,35 @@ public class Obfuscator {
     private final Map<String, ObfData> fieldNodeObfDataMap = new HashMap<>();
     @Getter
     private final Map<String, FieldNode> fieldNodeMap = new HashMap<>();
+
+    @Getter
+    private final ClassHierarchy classHierarchy;
+
+    // Keeps only names, hierarchy and selections in memory instead of full method and field nodes
+    @Getter
+    @Setter
+    private boolean lowMemoryMode;
+
+    // Selection rules applied to every member while a jar is loaded
+    @Getter
+    @Setter
+    private RuleSet ruleSet;
+
+    // Execution profile used to keep hot methods lightly transformed
+    @Getter
+    @Setter
+    private HotMethodProfile profile;
+    // Share of sampled CPU time whose methods count as hot
+    @Getter
+    @Setter
+    private double hotCoverage = 0.8;
+    @Getter
+    private volatile HotMethodProfile.Report profileReport;
+
+    // Runs OutputVerifier over the written jar before reporting success
+    @Getter
+    @Setter
+    private boolean verifyOutput;
     private static final SecureRandom RANDOM = new SecureRandom();
 
     private static final List<String> JAVA_KEYWORDS = Arrays.asList(
@@ -39,18 +71,85 @@ public class Obfuscator {
             "try", "void", "volatile", "while"
     );
 
+    public Obfuscator() {
+        this(new ClassHierarchy());
+    }
+
+    private Obfuscator(ClassHierarchy classHierarchy) {
+        this.classHierarchy = classHierarchy;
+    }
+
+    /**
+     * Copies the selections and settings, so a job run from the copy is not affected by later
+     * edits to this obfuscator. The loaded class hierarchy and member nodes are shared.
+     *
+     * @return Obfuscator with its own copy of every ObfData.
+     */
+    public Obfuscator snapshot() {
+        Obfuscator snapshot = new Obfuscator(classHierarchy);
+        copyObfData(nodeObfDataMap, snapshot.nodeObfDataMap);
+        copyObfData(fieldNodeObfDataMap, snapshot.fieldNodeObfDataMap);
+        snapshot.methodNodeMap.putAll(methodNodeMap);
+        snapshot.fieldNodeMap.putAll(fieldNodeMap);
+        snapshot.lowMemoryMode = lowMemoryMode;
+        snapshot.ruleSet = ruleSet;
+        snapshot.profile = profile;
+        snapshot.hotCoverage = hotCoverage;
+        snapshot.verifyOutput = verifyOutput;
+        return snapshot;
+    }
+
+    private static void copyObfData(Map<String, ObfData> source, Map<String, ObfData> target) {
+        for (Map.Entry<String, ObfData> entry : source.entrySet()) {
+            ObfData obfData = entry.getValue();
+            ObfData copy = new ObfData();
+            copy.setXorObfuscation(obfData.isXorObfuscation());
+            copy.setNameObfuscation(obfData.isNameObfuscation());
+            copy.setStringObfuscation(obfData.isStringObfuscation());
+            copy.setObfuscatedName(obfData.getObfuscatedName());
+            target.put(entry.getKey(), copy);
+        }
+    }
+
     /**
      * Obfuscates the provided JAR file.
      *
      * @param jarPath Path to the input JAR file.
+     * @throws VerificationException    If output verification is enabled and the written JAR is invalid.
+     * @throws UnresolvedTypesException If types outside the jar could not be found on the library classpath.
      */
     public boolean obfuscateJar(String jarPath) {
-        String outputPath = jarPath.replace(".jar", "_obfuscated.jar");
+        return obfuscateJar(jarPath, ObfuscationProgress.NONE);
+    }
+
+    /**
+     * Obfuscates the provided JAR file, reporting progress after each class.
+     *
+     * @param jarPath  Path to the input JAR file.
+     * @param progress Receives progress and is polled for cancellation between classes.
+     * @throws CancellationException If the run was cancelled, the partial output is deleted.
+     * @throws VerificationException    If output verification is enabled and the written JAR is invalid.
+     * @throws UnresolvedTypesException If types outside the jar could not be found on the library classpath.
+     */
+    public boolean obfuscateJar(String jarPath, ObfuscationProgress progress) {
+        String outputPath = getOutputPath(jarPath);
+        boolean cancelled = false;
 
         try (JarFile jarFile = new JarFile(jarPath);
              FileOutputStream fos = new FileOutputStream(outputPath);
              JarOutputStream jos = new JarOutputStream(fos)) {
 
+            // Fields kept out of XOR for this run only, the selections stay as the user made them
+            Set<String> exemptFields = Collections.emptySet();
+            profileReport = null;
+            if (profile != null) {
+                profileReport = profile.exemptHotMethods(jarFile, fieldNodeObfDataMap, hotCoverage);
+                exemptFields = profileReport.getExemptFields();
+            }
+
+            int totalClasses = (int) jarFile.stream().filter(entry -> entry.getName().endsWith(".class")).count();
+            int processedClasses = 0;
+
             // Iterate through each entry in the JAR
             Enumeration<JarEntry> entries = jarFile.entries();
             while (entries.hasMoreElements()) {
@@ -65,30 +164,125 @@ public class Obfuscator {
                     continue;
                 }
 
+                if (progress.isCancelled()) {
+                    cancelled = true;
+                    break;
+                }
+
                 // Process class files
                 try (InputStream is = jarFile.getInputStream(entry)) {
-                    byte[] modifiedClass = applyObfuscation(is);
+                    byte[] modifiedClass = applyObfuscation(is, exemptFields);
                     jos.putNextEntry(new JarEntry(entry.getName()));
                     jos.write(modifiedClass);
-                    return true;
                 }
+                progress.onProgress(++processedClasses, totalClasses);
             }
         } catch (IOException e) {
             throw new RuntimeException("Error obfuscating JAR file", e);
         }
-        return false;
+
+        if (cancelled) {
+            new File(outputPath).delete();
+            throw new CancellationException("Obfuscation of " + jarPath + " was cancelled");
+        }
+
+        checkResolvedTypes(outputPath);
+        if (verifyOutput) {
+            // The verifier shares the hierarchy, so types it could not resolve would hide failures
+            verifyJar(outputPath);
+            checkResolvedTypes(outputPath);
+        }
+        return true;
+    }
+
+    /**
+     * Fails the run if any type outside the jar could not be resolved, since frames computed
+     * from a guessed hierarchy may be invalid.
+     *
+     * @param outputPath Path to the obfuscated JAR file, deleted on failure.
+     * @throws UnresolvedTypesException If the hierarchy has unresolved types.
+     */
+    private void checkResolvedTypes(String outputPath) {
+        List<String> unresolvedTypes = classHierarchy.getUnresolvedTypes();
+        if (!unresolvedTypes.isEmpty()) {
+            new File(outputPath).delete();
+            throw new UnresolvedTypesException(unresolvedTypes);
+        }
+    }
+
+    /**
+     * Verifies a written JAR against the cached class hierarchy.
+     *
+     * @param outputPath Path to the obfuscated JAR file.
+     * @throws VerificationException If any class fails verification.
+     */
+    private void verifyJar(String outputPath) {
+        try {
+            OutputVerifier.Report report = new OutputVerifier(classHierarchy).verify(outputPath);
+            if (!report.isValid()) {
+                throw new VerificationException(report);
+            }
+            System.out.println("Verification passed: " + report);
+        } catch (IOException e) {
+            throw new RuntimeException("Error verifying obfuscated JAR file", e);
+        }
+    }
+
+    /**
+     * Returns the path the obfuscated JAR is written to.
+     *
+     * @param jarPath Path to the input JAR file.
+     * @return Path of the obfuscated JAR file.
+     */
+    public String getOutputPath(String jarPath) {
+        return jarPath.replace(".jar", "_obfuscated.jar");
+    }
+
+    /**
+     * Builds a lookup from obfuscated member keys back to their original names.
+     * Method keys are {@code name + desc}, field keys are {@code name + " " + desc},
+     * matching the keys of the ObfData maps.
+     *
+     * @return Map of obfuscated key to original name.
+     */
+    public Map<String, String> getReverseNameMapping() {
+        Map<String, String> mapping = new HashMap<>();
+        for (Map.Entry<String, ObfData> entry : nodeObfDataMap.entrySet()) {
+            String obfuscatedName = entry.getValue().getObfuscatedName();
+            if (obfuscatedName != null) {
+                String key = entry.getKey();
+                int descStart = key.indexOf('(');
+                mapping.put(obfuscatedName + key.substring(descStart), key.substring(0, descStart));
+            }
+        }
+        for (Map.Entry<String, ObfData> entry : fieldNodeObfDataMap.entrySet()) {
+            String obfuscatedName = entry.getValue().getObfuscatedName();
+            if (obfuscatedName != null) {
+                String key = entry.getKey();
+                int descStart = key.indexOf(' ');
+                mapping.put(obfuscatedName + key.substring(descStart), key.substring(0, descStart));
+            }
+        }
+        return mapping;
     }
 
     /**
      * Applies obfuscation transformations to a class file.
      *
-     * @param inputStream InputStream of the class file.
+     * @param inputStream  InputStream of the class file.
+     * @param exemptFields Keys of XOR-selected fields left plain in this run.
      * @return Transformed byte array of the class file.
      * @throws IOException If an error occurs during reading.
      */
-    private byte[] applyObfuscation(InputStream inputStream) throws IOException {
+    private byte[] applyObfuscation(InputStream inputStream, Set<String> exemptFields) throws IOException {
         ClassReader classReader = new ClassReader(inputStream);
-        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // Resolve frames from the cached hierarchy rather than loading classes
+                return classHierarchy.getCommonSuperClass(type1, type2);
+            }
+        };
 
         // Create a remapper that generates new names for methods and fields, and handles XOR obfuscation
         Remapper remapper = new Remapper() {
@@ -116,9 +310,10 @@ public class Obfuscator {
             @Override
             public String mapFieldName(String owner, String name, String descriptor) {
                 // Extract the ObfData object for this field
-                ObfData obfData = fieldNodeObfDataMap.get(name + " " + descriptor);
+                String key = name + " " + descriptor;
+                ObfData obfData = fieldNodeObfDataMap.get(key);
 
-                if (obfData != null && obfData.isXorObfuscation()) {
+                if (obfData != null && obfData.isXorObfuscation() && !exemptFields.contains(key)) {
                     // Check if the field is already obfuscated
                     if (obfData.getObfuscatedName() != null) {
                         return obfData.getObfuscatedName(); // Return the already-obfuscated name
@@ -141,8 +336,9 @@ public class Obfuscator {
             public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
                 FieldVisitor fieldVisitor = super.visitField(access, name, descriptor, signature, null);
 
-                ObfData obfData = fieldNodeObfDataMap.get(name + " " + descriptor);
-                if (obfData != null && obfData.isXorObfuscation()) {
+                String key = name + " " + descriptor;
+                ObfData obfData = fieldNodeObfDataMap.get(key);
+                if (obfData != null && obfData.isXorObfuscation() && !exemptFields.contains(key)) {
                     return new FieldVisitor(Opcodes.ASM9, fieldVisitor) {
                         @Override
                         public void visitEnd() {
@@ -169,7 +365,7 @@ public class Obfuscator {
                             // Apply XOR obfuscation for all applicable fields
                             for (Map.Entry<String, ObfData> entry : fieldNodeObfDataMap.entrySet()) {
                                 ObfData obfData = entry.getValue();
-                                if (obfData.isXorObfuscation()) {
+                                if (obfData.isXorObfuscation() && !exemptFields.contains(entry.getKey())) {
                                     String obfuscatedName = obfData.getObfuscatedName();
                                     if (obfuscatedName != null) {
                                         // Load XOR obfuscated value (e.g., 8944320 XOR 8943912)
@@ -185,8 +381,10 @@ public class Obfuscator {
                         @Override
                         public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
                             // Skip redundant field initialization in the static initializer
-                            ObfData obfData = fieldNodeObfDataMap.get(name + " " + descriptor);
-                            if (opcode == Opcodes.PUTSTATIC && obfData != null && owner.equals(className)) {
+                            String key = name + " " + descriptor;
+                            ObfData obfData = fieldNodeObfDataMap.get(key);
+                            if (opcode == Opcodes.PUTSTATIC && obfData != null && obfData.isXorObfuscation()
+                                    && !exemptFields.contains(key) && owner.equals(className)) {
                                 return; // Do not visit this instruction (removes assignment of 1000)
                             }
                             super.visitFieldInsn(opcode, owner, name, descriptor);
@@ -0,0 +1,349 @@
+package me.yattaw.project.plproject.obf;
+
+import lombok.Getter;
+import me.yattaw.project.plproject.util.InstructionHelper;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+/**
+ * Verifies the classes of an obfuscated jar without loading them. Every method is run
+ * through ASM's data-flow {@link Analyzer}, and field and method references to classes
+ * of the jar are resolved against the members actually written.
+ */
+public class OutputVerifier {
+
+    /**
+     * A single verification failure, located down to the instruction where possible.
+     */
+    public record Failure(String owner, String method, int instructionIndex, String message) {
+        @Override
+        public String toString() {
+            String location = owner.replace('/', '.') + (method != null ? "." + method : "");
+            if (instructionIndex >= 0) {
+                location += " @" + instructionIndex;
+            }
+            return location + ": " + message;
+        }
+    }
+
+    @Getter
+    public static class Report {
+        private final List<Failure> failures;
+        private final int verifiedClasses;
+
+        Report(List<Failure> failures, int verifiedClasses) {
+            this.failures = failures;
+            this.verifiedClasses = verifiedClasses;
+        }
+
+        public boolean isValid() {
+            return failures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            if (isValid()) {
+                return verifiedClasses + " classes verified";
+            }
+            return failures.stream().map(Failure::toString).collect(Collectors.joining("\n"));
+        }
+    }
+
+    private record ClassMembers(Map<String, String> fields, Set<String> methods) {
+    }
+
+    // Library classes that cannot be found on the classpath, references into them are not checked
+    private static final ClassMembers UNKNOWN = new ClassMembers(Map.of(), Set.of());
+
+    private final ClassHierarchy classHierarchy;
+    private final Map<String, ClassMembers> libraryMembers = new ConcurrentHashMap<>();
+
+    public OutputVerifier(ClassHierarchy classHierarchy) {
+        this.classHierarchy = classHierarchy;
+    }
+
+    /**
+     * Verifies every class of the jar in parallel. Verification stops scheduling new
+     * classes as soon as one fails, so the report holds the failures found up to then.
+     *
+     * @param jarPath Path to the JAR file to verify.
+     * @return The verification report.
+     * @throws IOException If the JAR file cannot be read.
+     */
+    public Report verify(String jarPath) throws IOException {
+        try (JarFile jarFile = new JarFile(jarPath)) {
+            List<String> classEntries = jarFile.stream()
+                    .map(JarEntry::getName)
+                    .filter(name -> name.endsWith(".class"))
+                    .collect(Collectors.toList());
+
+            // First pass collects the members that were actually written
+            Map<String, ClassMembers> members = new ConcurrentHashMap<>();
+            classEntries.parallelStream().forEach(name -> {
+                ClassNode classNode = readClass(jarFile, name, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
+                members.put(classNode.name, toMembers(classNode));
+            });
+
+            // Second pass analyzes the code, one class per task
+            Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+            AtomicBoolean failed = new AtomicBoolean();
+            classEntries.parallelStream().forEach(name -> {
+                if (failed.get()) {
+                    return;
+                }
+                ClassNode classNode = readClass(jarFile, name, ClassReader.SKIP_FRAMES);
+                List<Failure> classFailures = verifyClass(classNode, members);
+                if (!classFailures.isEmpty()) {
+                    failures.addAll(classFailures);
+                    failed.set(true);
+                }
+            });
+
+            List<Failure> sorted = new ArrayList<>(failures);
+            sorted.sort(Comparator.comparing(Failure::owner)
+                    .thenComparing(failure -> String.valueOf(failure.method()))
+                    .thenComparingInt(Failure::instructionIndex));
+            return new Report(sorted, classEntries.size());
+        }
+    }
+
+    private static ClassNode readClass(JarFile jarFile, String name, int parsingOptions) {
+        try (InputStream is = jarFile.getInputStream(jarFile.getJarEntry(name))) {
+            ClassNode classNode = new ClassNode();
+            new ClassReader(is).accept(classNode, parsingOptions);
+            return classNode;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ClassMembers toMembers(ClassNode classNode) {
+        Map<String, String> fields = new HashMap<>();
+        for (FieldNode field : classNode.fields) {
+            fields.put(field.name, field.desc);
+        }
+        Set<String> methods = new HashSet<>();
+        for (MethodNode method : classNode.methods) {
+            methods.add(method.name + method.desc);
+        }
+        return new ClassMembers(fields, methods);
+    }
+
+    /**
+     * Returns the members of a class from the jar, or of a library class read from the library classpath.
+     */
+    private ClassMembers getMembers(String owner, Map<String, ClassMembers> members) {
+        ClassMembers classMembers = members.get(owner);
+        if (classMembers != null) {
+            return classMembers;
+        }
+        return libraryMembers.computeIfAbsent(owner, name -> {
+            try (InputStream is = classHierarchy.openClassFile(name)) {
+                if (is == null) {
+                    return UNKNOWN;
+                }
+                ClassNode classNode = new ClassNode();
+                new ClassReader(is).accept(classNode, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
+                return toMembers(classNode);
+            } catch (IOException e) {
+                return UNKNOWN;
+            }
+        });
+    }
+
+    private List<Failure> verifyClass(ClassNode classNode, Map<String, ClassMembers> members) {
+        List<Failure> failures = new ArrayList<>();
+
+        // Structural checks on names, descriptors and access flags
+        try {
+            classNode.accept(new CheckClassAdapter(null, false));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            failures.add(new Failure(classNode.name, null, -1, e.getMessage()));
+            return failures;
+        }
+
+        for (MethodNode method : classNode.methods) {
+            if (method.instructions.size() == 0) {
+                continue;
+            }
+            String methodName = method.name + method.desc;
+
+            for (AbstractInsnNode insn : method.instructions) {
+                String message = checkReference(insn, members);
+                if (message != null) {
+                    failures.add(new Failure(classNode.name, methodName, method.instructions.indexOf(insn), message));
+                }
+            }
+
+            Analyzer<BasicValue> analyzer = new Analyzer<>(new HierarchyVerifier(classNode));
+            try {
+                analyzer.analyze(classNode.name, method);
+            } catch (AnalyzerException e) {
+                int index = e.node != null ? method.instructions.indexOf(e.node) : -1;
+                failures.add(new Failure(classNode.name, methodName, index, e.getMessage()));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Checks that a field or method instruction refers to a member that exists in the jar.
+     *
+     * @return A failure message, or {@code null} if the reference resolves or leaves the jar.
+     */
+    private String checkReference(AbstractInsnNode insn, Map<String, ClassMembers> members) {
+        String opcode = InstructionHelper.getOpcodeName(insn.getOpcode());
+        if (insn instanceof FieldInsnNode fieldInsn) {
+            if (!members.containsKey(fieldInsn.owner)) {
+                return null;
+            }
+            String desc = resolveField(fieldInsn.owner, fieldInsn.name, members, new HashSet<>());
+            if (desc == null) {
+                return opcode + " " + fieldInsn.owner + "." + fieldInsn.name + " " + fieldInsn.desc + ": field does not exist";
+            } else if (!desc.isEmpty() && !desc.equals(fieldInsn.desc)) {
+                return opcode + " " + fieldInsn.owner + "." + fieldInsn.name + " " + fieldInsn.desc
+                        + ": field has type " + desc;
+            }
+        } else if (insn instanceof MethodInsnNode methodInsn) {
+            if (!members.containsKey(methodInsn.owner) || methodInsn.owner.startsWith("[")) {
+                return null;
+            }
+            if (!resolveMethod(methodInsn.owner, methodInsn.name + methodInsn.desc, members, new HashSet<>())) {
+                return opcode + " " + methodInsn.owner + "." + methodInsn.name + methodInsn.desc + ": method does not exist";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolves a field the way the JVM does: the class itself, then its interfaces, then its super class.
+     *
+     * @return The field descriptor, an empty string if resolution reached an unknown class, or {@code null} if not found.
+     */
+    private String resolveField(String owner, String name, Map<String, ClassMembers> members, Set<String> visited) {
+        if (!visited.add(owner)) {
+            return null;
+        }
+        ClassMembers classMembers = getMembers(owner, members);
+        if (classMembers == UNKNOWN) {
+            // Not on the classpath, assume the runtime provides it
+            return "";
+        }
+        String desc = classMembers.fields().get(name);
+        if (desc != null) {
+            return desc;
+        }
+        for (String iface : classHierarchy.getInterfaces(owner)) {
+            desc = resolveField(iface, name, members, visited);
+            if (desc != null) {
+                return desc;
+            }
+        }
+        String superName = classHierarchy.getSuperName(owner);
+        return superName != null ? resolveField(superName, name, members, visited) : null;
+    }
+
+    private boolean resolveMethod(String owner, String method, Map<String, ClassMembers> members, Set<String> visited) {
+        if (!visited.add(owner)) {
+            return false;
+        }
+        ClassMembers classMembers = getMembers(owner, members);
+        if (classMembers == UNKNOWN || classMembers.methods().contains(method)) {
+            return true;
+        }
+        String superName = classHierarchy.getSuperName(owner);
+        if (superName != null && resolveMethod(superName, method, members, visited)) {
+            return true;
+        }
+        for (String iface : classHierarchy.getInterfaces(owner)) {
+            if (resolveMethod(iface, method, members, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * SimpleVerifier that answers type questions from the cached hierarchy instead of loading classes.
+     */
+    private class HierarchyVerifier extends SimpleVerifier {
+
+        HierarchyVerifier(ClassNode classNode) {
+            super(Opcodes.ASM9, Type.getObjectType(classNode.name),
+                    classNode.superName != null ? Type.getObjectType(classNode.superName) : null,
+                    classNode.interfaces.stream().map(Type::getObjectType).collect(Collectors.toList()),
+                    (classNode.access & Opcodes.ACC_INTERFACE) != 0);
+        }
+
+        @Override
+        protected boolean isSubTypeOf(BasicValue value, BasicValue expected) {
+            Type expectedType = expected.getType();
+            Type type = value.getType();
+            if (isReference(expectedType) && isReference(type) && !"Lnull;".equals(type.getDescriptor())) {
+                // Like the JVM verifier, any reference is accepted where an interface is expected
+                return isAssignableFrom(expectedType, type)
+                        || (expectedType.getSort() == Type.OBJECT && isInterface(expectedType));
+            }
+            return super.isSubTypeOf(value, expected);
+        }
+
+        @Override
+        protected boolean isInterface(Type type) {
+            return type.getSort() == Type.OBJECT && classHierarchy.isInterface(type.getInternalName());
+        }
+
+        @Override
+        protected Type getSuperClass(Type type) {
+            String superName = classHierarchy.getSuperName(type.getInternalName());
+            return superName != null ? Type.getObjectType(superName) : null;
+        }
+
+        @Override
+        protected boolean isAssignableFrom(Type type, Type other) {
+            if (type.equals(other)) {
+                return true;
+            }
+            if (type.getSort() == Type.OBJECT && other.getSort() == Type.OBJECT) {
+                return classHierarchy.isAssignableFrom(type.getInternalName(), other.getInternalName());
+            }
+            if (other.getSort() == Type.ARRAY) {
+                if (type.getSort() == Type.OBJECT) {
+                    String name = type.getInternalName();
+                    return name.equals("java/lang/Object") || name.equals("java/lang/Cloneable")
+                            || name.equals("java/io/Serializable");
+                }
+                if (type.getSort() == Type.ARRAY) {
+                    Type component = Type.getType(type.getDescriptor().substring(1));
+                    Type otherComponent = Type.getType(other.getDescriptor().substring(1));
+                    return isReference(component) && isReference(otherComponent)
+                            ? isAssignableFrom(component, otherComponent)
+                            : component.equals(otherComponent);
+                }
+            }
+            return false;
+        }
+
+        private boolean isReference(Type type) {
+            return type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY;
+        }
+    }
+
+}
@@ -0,0 +1,496 @@
+package me.yattaw.project.plproject.obf;
+
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Declarative member selection, compiled once and evaluated while a jar is loaded.
+ * <p>
+ * One rule per line, {@code #} starts a comment:
+ * <pre>
+ * &lt;include|exclude|keep&gt; &lt;method|field|member&gt; [owner=..] [name=..] [desc=..] [access=..] [transforms=..]
+ * </pre>
+ * Patterns are globs ({@code *} and {@code ?} stay within one package segment of the owner,
+ * {@code **} crosses segments) or regexes prefixed with {@code re:}. {@code access} is a comma
+ * separated list of flags, {@code !} negates one. Flags specific to methods
+ * ({@code synchronized}, {@code bridge}, {@code varargs}, {@code native}, {@code abstract}, {@code strict})
+ * or fields ({@code volatile}, {@code transient}, {@code enum}) are rejected on the other kind and
+ * narrow a {@code member} rule to their kind. {@code transforms} is a comma separated list of
+ * {@code name}, {@code xor} and {@code string}; includes default to name for methods and xor for fields,
+ * excludes default to every transform. A {@code keep} rule wins over everything else, then excludes
+ * win over includes, so the order of the rules does not matter.
+ * <p>
+ * Selections are keyed by name and descriptor without the owner, as renaming is applied by
+ * signature across the whole jar. When classes share a key, the results are merged the same
+ * way: a keep or exclude in any of them wins over an include in another.
+ * <p>
+ * Rules are indexed in a trie by the literal prefix of their owner pattern, so each class only
+ * tests the rules that can apply to it. Member rules are further indexed per kind by the longer
+ * literal prefix or suffix of their name pattern ({@code re:} patterns of the form {@code lit.*}
+ * or {@code .*lit} included), so resolving a member walks two tries along its name and only
+ * tests rules whose literal part it contains. Rules whose name has no literal at either end,
+ * such as {@code *} or a general regex, are tested for every member of a matching class.
+ */
+public class RuleSet {
+
+    public static final int NAME = 1;
+    public static final int XOR = 1 << 1;
+    public static final int STRING = 1 << 2;
+    private static final int ALL = NAME | XOR | STRING;
+    private static final int DEFAULT = -1;
+
+    private enum Action {
+        INCLUDE, EXCLUDE, KEEP
+    }
+
+    private enum Kind {
+        METHOD, FIELD, MEMBER
+    }
+
+    private static final Map<String, Integer> ACCESS_FLAGS = Map.of(
+            "public", Opcodes.ACC_PUBLIC,
+            "private", Opcodes.ACC_PRIVATE,
+            "protected", Opcodes.ACC_PROTECTED,
+            "static", Opcodes.ACC_STATIC,
+            "final", Opcodes.ACC_FINAL,
+            "synthetic", Opcodes.ACC_SYNTHETIC
+    );
+
+    // Kind specific flags, looked up separately because methods and fields reuse the same bits
+    // (bridge and volatile are both 0x40, varargs and transient both 0x80)
+    private static final Map<String, Integer> METHOD_ACCESS_FLAGS = Map.of(
+            "synchronized", Opcodes.ACC_SYNCHRONIZED,
+            "bridge", Opcodes.ACC_BRIDGE,
+            "varargs", Opcodes.ACC_VARARGS,
+            "native", Opcodes.ACC_NATIVE,
+            "abstract", Opcodes.ACC_ABSTRACT,
+            "strict", Opcodes.ACC_STRICT
+    );
+    private static final Map<String, Integer> FIELD_ACCESS_FLAGS = Map.of(
+            "volatile", Opcodes.ACC_VOLATILE,
+            "transient", Opcodes.ACC_TRANSIENT,
+            "enum", Opcodes.ACC_ENUM
+    );
+
+    private record Rule(int index, Action action, Kind kind, Predicate<String> owner, Predicate<String> name,
+                        Predicate<String> desc, int requiredAccess, int forbiddenAccess, int transforms) {
+
+        boolean matches(Kind memberKind, String memberName, String memberDesc, int access) {
+            return (kind == Kind.MEMBER || kind == memberKind)
+                    && (access & requiredAccess) == requiredAccess
+                    && (access & forbiddenAccess) == 0
+                    && name.test(memberName)
+                    && desc.test(memberDesc);
+        }
+
+        int transformsFor(Kind memberKind) {
+            if (transforms != DEFAULT) {
+                return transforms;
+            }
+            if (action != Action.INCLUDE) {
+                return ALL;
+            }
+            return memberKind == Kind.METHOD ? NAME : XOR;
+        }
+    }
+
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private final List<Rule> rules = new ArrayList<>();
+
+        void insert(String key, boolean reversed, Rule rule) {
+            TrieNode node = this;
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(reversed ? key.length() - 1 - i : i);
+                node = node.children.computeIfAbsent(c, k -> new TrieNode());
+            }
+            node.rules.add(rule);
+        }
+
+        /**
+         * Walks the trie along the given value (from its end if reversed) and passes every
+         * rule stored on the way to the consumer, i.e. every rule whose key is a prefix
+         * (or suffix) of the value.
+         */
+        void collect(String value, boolean reversed, List<Rule> consumer) {
+            TrieNode node = this;
+            int depth = 0;
+            while (node != null) {
+                consumer.addAll(node.rules);
+                node = depth < value.length()
+                        ? node.children.get(value.charAt(reversed ? value.length() - 1 - depth++ : depth++))
+                        : null;
+            }
+        }
+    }
+
+    /**
+     * Member rules of one kind, indexed by the literal prefix or suffix of their name pattern.
+     * Only rules whose name pattern has no literal part at either end sit at the roots.
+     */
+    private static class MemberIndex {
+        private final TrieNode prefixes = new TrieNode();
+        private final TrieNode suffixes = new TrieNode();
+
+        void add(Rule rule, NameKey key) {
+            if (key.suffix()) {
+                suffixes.insert(key.literal(), true, rule);
+            } else {
+                prefixes.insert(key.literal(), false, rule);
+            }
+        }
+
+        List<Rule> candidates(String name) {
+            List<Rule> candidates = new ArrayList<>();
+            prefixes.collect(name, false, candidates);
+            suffixes.collect(name, true, candidates);
+            return candidates;
+        }
+    }
+
+    /**
+     * Literal a member name must start with, or end with if {@code suffix} is set.
+     */
+    private record NameKey(String literal, boolean suffix) {
+    }
+
+    // Regexes that are a plain literal with an optional leading and/or trailing .* can be indexed like globs
+    private static final Pattern SIMPLE_REGEX = Pattern.compile("(\\.\\*)?([A-Za-z0-9_]*)(\\.\\*)?");
+
+    /**
+     * Outcome of the rules for one member. The include and exclude masks are kept apart so
+     * members that share a key across classes can be merged with excludes still winning.
+     */
+    public record Selection(int include, int exclude) {
+
+        public static final Selection NONE = new Selection(0, 0);
+
+        public int transforms() {
+            return include & ~exclude;
+        }
+    }
+
+    /**
+     * Rules whose owner pattern matched a class, used to resolve each of its members.
+     */
+    public static class ClassRules {
+        private final RuleSet ruleSet;
+        // Rules matched through the owner trie, rules for any owner are kept by the rule set
+        private final BitSet ownerMatches;
+        // Every applicable rule when there are few enough to test directly, otherwise null
+        private final List<Rule> directRules;
+
+        private ClassRules(RuleSet ruleSet, BitSet ownerMatches, List<Rule> ownerRules) {
+            this.ruleSet = ruleSet;
+            this.ownerMatches = ownerMatches;
+            if (ruleSet == null || ownerRules.size() + ruleSet.anyOwnerRules.size() <= DIRECT_RULES) {
+                // Few rules apply to this class, testing them directly is cheaper than walking the name index
+                this.directRules = new ArrayList<>(ownerRules);
+                if (ruleSet != null) {
+                    this.directRules.addAll(ruleSet.anyOwnerRules);
+                }
+            } else {
+                this.directRules = null;
+            }
+        }
+
+        public Selection resolveMethod(String name, String desc, int access) {
+            // Constructors and static initializers can never be renamed
+            Selection selection = resolve(Kind.METHOD, name, desc, access);
+            return name.startsWith("<") ? new Selection(selection.include() & ~NAME, selection.exclude()) : selection;
+        }
+
+        public Selection resolveField(String name, String desc, int access) {
+            return resolve(Kind.FIELD, name, desc, access);
+        }
+
+        private Selection resolve(Kind kind, String name, String desc, int access) {
+            List<Rule> candidates = directRules != null ? directRules
+                    : (kind == Kind.METHOD ? ruleSet.methodIndex : ruleSet.fieldIndex).candidates(name);
+
+            int include = 0;
+            int exclude = 0;
+            for (Rule rule : candidates) {
+                boolean ownerMatched = directRules != null
+                        || ruleSet.anyOwnerMatches.get(rule.index()) || ownerMatches.get(rule.index());
+                if (!ownerMatched || !rule.matches(kind, name, desc, access)) {
+                    continue;
+                }
+                switch (rule.action()) {
+                    case INCLUDE -> include |= rule.transformsFor(kind);
+                    case EXCLUDE -> exclude |= rule.transformsFor(kind);
+                    case KEEP -> {
+                        return new Selection(0, ALL);
+                    }
+                }
+            }
+            return include == 0 && exclude == 0 ? Selection.NONE : new Selection(include, exclude);
+        }
+    }
+
+    private static final ClassRules NO_RULES = new ClassRules(null, new BitSet(), Collections.emptyList());
+
+    // Owner-matched rules up to which members are resolved without the name index
+    private static final int DIRECT_RULES = 8;
+
+    // Rules with the default owner pattern match every class and need no owner test
+    private final List<Rule> anyOwnerRules = new ArrayList<>();
+    private final BitSet anyOwnerMatches = new BitSet();
+    private final TrieNode owners = new TrieNode();
+    private final MemberIndex methodIndex = new MemberIndex();
+    private final MemberIndex fieldIndex = new MemberIndex();
+    private final int ruleCount;
+
+    private RuleSet(List<Rule> rules, List<String> ownerPrefixes, List<NameKey> nameKeys) {
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            if (ownerPrefixes.get(i) == null) {
+                anyOwnerRules.add(rule);
+                anyOwnerMatches.set(rule.index());
+            } else {
+                owners.insert(ownerPrefixes.get(i), false, rule);
+            }
+            if (rule.kind() != Kind.FIELD) {
+                methodIndex.add(rule, nameKeys.get(i));
+            }
+            if (rule.kind() != Kind.METHOD) {
+                fieldIndex.add(rule, nameKeys.get(i));
+            }
+        }
+        this.ruleCount = rules.size();
+    }
+
+    public int size() {
+        return ruleCount;
+    }
+
+    /**
+     * Reads and compiles a rule file.
+     *
+     * @param path Path to the rule file.
+     * @return The compiled rule set.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If a rule is malformed.
+     */
+    public static RuleSet load(Path path) throws IOException {
+        return compile(Files.readAllLines(path));
+    }
+
+    /**
+     * Compiles rule lines into a rule set.
+     *
+     * @param lines Rule lines, blank lines and comments are ignored.
+     * @return The compiled rule set.
+     * @throws IllegalArgumentException If a rule is malformed.
+     */
+    public static RuleSet compile(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+        List<String> ownerPrefixes = new ArrayList<>();
+        List<NameKey> nameKeys = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                parseRule(line, rules, ownerPrefixes, nameKeys);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid rule on line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return new RuleSet(rules, ownerPrefixes, nameKeys);
+    }
+
+    private static void parseRule(String line, List<Rule> rules, List<String> ownerPrefixes, List<NameKey> nameKeys) {
+        String[] tokens = line.split("\\s+");
+        if (tokens.length < 2) {
+            throw new IllegalArgumentException("expected <action> <kind>");
+        }
+        Action action = parseEnum(Action.class, tokens[0]);
+        Kind kind = parseEnum(Kind.class, tokens[1]);
+
+        String owner = "**";
+        String name = "*";
+        String desc = "*";
+        int requiredAccess = 0;
+        int forbiddenAccess = 0;
+        int transforms = DEFAULT;
+
+        for (int i = 2; i < tokens.length; i++) {
+            int separator = tokens[i].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected key=value, got " + tokens[i]);
+            }
+            String key = tokens[i].substring(0, separator);
+            String value = tokens[i].substring(separator + 1);
+            switch (key) {
+                case "owner" -> owner = value.startsWith("re:") ? value : value.replace('.', '/');
+                case "name" -> name = value;
+                case "desc" -> desc = value;
+                case "access" -> {
+                    for (String flag : value.split(",")) {
+                        boolean negated = flag.startsWith("!");
+                        String flagName = negated ? flag.substring(1) : flag;
+                        Integer bit = ACCESS_FLAGS.get(flagName);
+                        if (bit == null) {
+                            Kind flagKind = METHOD_ACCESS_FLAGS.containsKey(flagName) ? Kind.METHOD
+                                    : FIELD_ACCESS_FLAGS.containsKey(flagName) ? Kind.FIELD : null;
+                            if (flagKind == null) {
+                                throw new IllegalArgumentException("unknown access flag " + flag);
+                            }
+                            // A kind specific flag narrows a member rule to that kind
+                            if (kind == Kind.MEMBER) {
+                                kind = flagKind;
+                            } else if (kind != flagKind) {
+                                throw new IllegalArgumentException("access flag " + flagName + " does not apply to "
+                                        + kind.name().toLowerCase(Locale.ROOT) + "s");
+                            }
+                            bit = (flagKind == Kind.METHOD ? METHOD_ACCESS_FLAGS : FIELD_ACCESS_FLAGS).get(flagName);
+                        }
+                        if (negated) {
+                            forbiddenAccess |= bit;
+                        } else {
+                            requiredAccess |= bit;
+                        }
+                    }
+                }
+                case "transforms" -> {
+                    transforms = 0;
+                    for (String transform : value.split(",")) {
+                        transforms |= switch (transform) {
+                            case "name" -> NAME;
+                            case "xor" -> XOR;
+                            case "string" -> STRING;
+                            default -> throw new IllegalArgumentException("unknown transform " + transform);
+                        };
+                    }
+                }
+                default -> throw new IllegalArgumentException("unknown key " + key);
+            }
+        }
+
+        rules.add(new Rule(rules.size(), action, kind, compilePattern(owner, true), compilePattern(name, false),
+                compilePattern(desc, false), requiredAccess, forbiddenAccess, transforms));
+        ownerPrefixes.add(owner.equals("**") ? null : literalPrefix(owner));
+        nameKeys.add(nameKey(name));
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown " + type.getSimpleName().toLowerCase(Locale.ROOT) + " " + value);
+        }
+    }
+
+    /**
+     * Returns the part of a pattern before its first wildcard, used as the trie key.
+     */
+    private static String literalPrefix(String pattern) {
+        if (pattern.startsWith("re:")) {
+            return "";
+        }
+        int end = 0;
+        while (end < pattern.length() && pattern.charAt(end) != '*' && pattern.charAt(end) != '?') {
+            end++;
+        }
+        return pattern.substring(0, end);
+    }
+
+    /**
+     * Picks the longer of the literal prefix and suffix of a name pattern as its index key.
+     */
+    private static NameKey nameKey(String pattern) {
+        String prefix;
+        String suffix;
+        if (pattern.startsWith("re:")) {
+            Matcher matcher = SIMPLE_REGEX.matcher(pattern.substring(3));
+            if (!matcher.matches()) {
+                return new NameKey("", false);
+            }
+            boolean leading = matcher.group(1) != null;
+            boolean trailing = matcher.group(3) != null;
+            prefix = leading ? "" : matcher.group(2);
+            suffix = trailing ? "" : matcher.group(2);
+        } else {
+            prefix = literalPrefix(pattern);
+            int end = pattern.length();
+            while (end > 0 && pattern.charAt(end - 1) != '*' && pattern.charAt(end - 1) != '?') {
+                end--;
+            }
+            suffix = pattern.substring(end);
+        }
+        return suffix.length() > prefix.length() ? new NameKey(suffix, true) : new NameKey(prefix, false);
+    }
+
+    private static Predicate<String> compilePattern(String pattern, boolean segmented) {
+        if (pattern.startsWith("re:")) {
+            try {
+                return Pattern.compile(pattern.substring(3)).asMatchPredicate();
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("invalid regex " + pattern.substring(3));
+            }
+        }
+
+        String prefix = literalPrefix(pattern);
+        if (prefix.length() == pattern.length()) {
+            return pattern::equals;
+        }
+        String rest = pattern.substring(prefix.length());
+        if (rest.equals("**") || (!segmented && rest.equals("*"))) {
+            return value -> value.startsWith(prefix);
+        }
+
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append(segmented ? "[^/]*" : ".*");
+            } else if (c == '?') {
+                regex.append(segmented ? "[^/]" : ".");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString()).asMatchPredicate();
+    }
+
+    /**
+     * Collects the rules whose owner pattern matches the given class by walking the
+     * trie along the class name.
+     *
+     * @param owner Internal name of the class.
+     * @return Rules to resolve the members of that class with.
+     */
+    public ClassRules forClass(String owner) {
+        List<Rule> candidates = new ArrayList<>();
+        owners.collect(owner, false, candidates);
+
+        List<Rule> matched = new ArrayList<>();
+        BitSet ownerMatches = new BitSet();
+        for (Rule rule : candidates) {
+            if (rule.owner().test(owner)) {
+                matched.add(rule);
+                ownerMatches.set(rule.index());
+            }
+        }
+        return matched.isEmpty() && anyOwnerRules.isEmpty() ? NO_RULES : new ClassRules(this, ownerMatches, matched);
+    }
+
+}
@@ -0,0 +1,25 @@
+package me.yattaw.project.plproject.obf;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Thrown when types needed to compute stack map frames could not be found, so the
+ * obfuscated jar would be written with frames based on guessed hierarchies.
+ */
+@Getter
+public class UnresolvedTypesException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> types;
+
+    public UnresolvedTypesException(List<String> types) {
+        super("Cannot resolve " + types.size() + " types, add the JAR's dependencies to the library classpath: "
+                + String.join(", ", types.subList(0, Math.min(types.size(), 20)))
+                + (types.size() > 20 ? ", ..." : ""));
+        this.types = List.copyOf(types);
+    }
+
+}
@@ -0,0 +1,21 @@
+package me.yattaw.project.plproject.obf;
+
+import lombok.Getter;
+
+/**
+ * Thrown when the obfuscated jar fails output verification.
+ */
+@Getter
+public class VerificationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    // Not serializable, the message keeps the report text when this is serialized
+    private final transient OutputVerifier.Report report;
+
+    public VerificationException(OutputVerifier.Report report) {
+        super("Obfuscated JAR failed verification:\n" + report);
+        this.report = report;
+    }
+
+}
@@ -0,0 +1,368 @@
+package me.yattaw.project.plproject.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.yattaw.project.plproject.obf.HotMethodProfile;
+import me.yattaw.project.plproject.obf.JarHandler;
+import me.yattaw.project.plproject.obf.ObfData;
+import me.yattaw.project.plproject.obf.Obfuscator;
+import me.yattaw.project.plproject.obf.RuleSet;
+import me.yattaw.project.plproject.obf.UnresolvedTypesException;
+import me.yattaw.project.plproject.obf.VerificationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded HTTP service that keeps one warm JVM around for repeated obfuscation runs.
+ * <p>
+ * {@code POST /obfuscate} takes a jar as the request body and streams back the obfuscated
+ * jar. Members are selected with repeated query parameters, {@code method=name+desc} for
+ * name obfuscation and {@code field=name+" "+desc} for XOR obfuscation, or in bulk with
+ * {@code rule=} lines in {@link RuleSet} syntax. {@code verify=true} verifies the output
+ * before it is returned, and {@code profile=} names a JFR recording or hot-method list inside
+ * the configured profile directory whose hot methods keep their fields out of XOR obfuscation;
+ * its summary is returned in the {@code X-Profile-Report} response header.
+ * {@code GET /stats} reports request counts and latency percentiles.
+ */
+public class ObfuscationService {
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final JarHandler jarHandler = new JarHandler();
+
+    // Admission bounds running plus waiting requests, workers bounds the running ones
+    private final Semaphore admission;
+    private final Semaphore workers;
+    private final int maxConcurrent;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+
+    // Directory profiles are resolved in, profiles are rejected when unset
+    private volatile Path profileDirectory;
+    // Dependencies of the submitted jars, so library types resolve when frames are computed
+    private volatile List<Path> libraryClasspath = List.of();
+
+    /**
+     * Creates a service bound to the loopback interface.
+     *
+     * @param port          Port to listen on, or 0 for an ephemeral port.
+     * @param maxConcurrent Maximum number of obfuscation runs executing at once.
+     * @param queueCapacity Maximum number of requests waiting for a free worker.
+     * @throws IOException If the port cannot be bound.
+     */
+    public ObfuscationService(int port, int maxConcurrent, int queueCapacity) throws IOException {
+        this.maxConcurrent = maxConcurrent;
+        this.admission = new Semaphore(maxConcurrent + queueCapacity);
+        this.workers = new Semaphore(maxConcurrent);
+        this.executor = createExecutor();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/obfuscate", this::handleObfuscate);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Obfuscation service listening on http://localhost:" + getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Sets the library classpath every submitted jar is resolved against.
+     *
+     * @param libraryClasspath Library jars or class directories.
+     */
+    public void setLibraryClasspath(List<Path> libraryClasspath) {
+        this.libraryClasspath = List.copyOf(libraryClasspath);
+    }
+
+    /**
+     * Allows {@code profile=} requests, resolving their file names inside the given directory.
+     *
+     * @param profileDirectory Directory holding the profiles clients may use.
+     * @throws IOException If the directory does not exist.
+     */
+    public void setProfileDirectory(Path profileDirectory) throws IOException {
+        this.profileDirectory = profileDirectory.toRealPath();
+    }
+
+    /**
+     * Uses a virtual-thread-per-task executor when the running JVM provides one (Java 21+),
+     * falling back to a cached platform thread pool on older runtimes.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handleObfuscate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Use POST with a jar as the request body");
+                return;
+            }
+
+            // Reject immediately instead of queueing without bound
+            if (!admission.tryAcquire()) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 503, "Obfuscation queue is full");
+                return;
+            }
+
+            long start = System.nanoTime();
+            Path inputJar = null;
+            Path outputJar = null;
+            try {
+                // Receive the upload under the admission permit only, so slow clients can't hold a worker
+                inputJar = Files.createTempFile("plproject-", ".jar");
+                try (InputStream body = exchange.getRequestBody()) {
+                    Files.copy(body, inputJar, StandardCopyOption.REPLACE_EXISTING);
+                }
+                List<Map.Entry<String, String>> settings = parseQuery(exchange.getRequestURI().getRawQuery());
+                RuleSet ruleSet = compileRules(settings);
+
+                HotMethodProfile.Report profileReport;
+                workers.acquire();
+                try {
+                    // Requests never view bytecode, so only the compact summary is kept per run
+                    Obfuscator obfuscator = new Obfuscator();
+                    obfuscator.setLowMemoryMode(true);
+                    obfuscator.setRuleSet(ruleSet);
+                    obfuscator.getClassHierarchy().setLibraryClasspath(libraryClasspath);
+                    jarHandler.loadClasses(obfuscator, inputJar.toString());
+                    applySettings(obfuscator, settings);
+
+                    outputJar = Paths.get(obfuscator.getOutputPath(inputJar.toString()));
+                    obfuscator.obfuscateJar(inputJar.toString());
+                    profileReport = obfuscator.getProfileReport();
+                } finally {
+                    workers.release();
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", "application/java-archive");
+                if (profileReport != null) {
+                    exchange.getResponseHeaders().set("X-Profile-Report", profileReport.getSummary());
+                }
+                exchange.sendResponseHeaders(200, Files.size(outputJar));
+                try (OutputStream os = exchange.getResponseBody()) {
+                    Files.copy(outputJar, os);
+                } catch (IOException e) {
+                    // The 200 status is already out, so no error response can follow; closing the exchange aborts it
+                    System.err.println("Failed to stream obfuscated JAR to client: " + e.getMessage());
+                    failed.incrementAndGet();
+                    return;
+                }
+                completed.incrementAndGet();
+                recordLatency(System.nanoTime() - start);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.incrementAndGet();
+                sendText(exchange, 503, "Service is shutting down");
+            } catch (VerificationException | UnresolvedTypesException e) {
+                failed.incrementAndGet();
+                sendText(exchange, 422, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                failed.incrementAndGet();
+                sendText(exchange, 400, e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                failed.incrementAndGet();
+                sendText(exchange, 500, "Failed to obfuscate JAR: " + e.getMessage());
+            } finally {
+                admission.release();
+                deleteQuietly(inputJar);
+                deleteQuietly(outputJar);
+            }
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long[] snapshot = latencySnapshot();
+            int running = maxConcurrent - workers.availablePermits();
+            String json = "{"
+                    + "\"completed\":" + completed.get()
+                    + ",\"failed\":" + failed.get()
+                    + ",\"rejected\":" + rejected.get()
+                    + ",\"running\":" + running
+                    + ",\"queued\":" + Math.max(0, workers.getQueueLength())
+                    + ",\"p50Ms\":" + percentileMillis(snapshot, 0.50)
+                    + ",\"p90Ms\":" + percentileMillis(snapshot, 0.90)
+                    + ",\"p99Ms\":" + percentileMillis(snapshot, 0.99)
+                    + "}";
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Compiles the {@code rule} parameters, which are resolved while the jar is loaded.
+     *
+     * @param settings Parsed query parameters.
+     * @return The compiled rules, or {@code null} if there are none.
+     */
+    private static RuleSet compileRules(List<Map.Entry<String, String>> settings) {
+        List<String> rules = new ArrayList<>();
+        for (Map.Entry<String, String> parameter : settings) {
+            if (parameter.getKey().equals("rule")) {
+                rules.add(parameter.getValue());
+            }
+        }
+        return rules.isEmpty() ? null : RuleSet.compile(rules);
+    }
+
+    /**
+     * Marks the members named in the query string for obfuscation.
+     *
+     * @param obfuscator Obfuscator with the jar already loaded.
+     * @param settings   Parsed query parameters.
+     */
+    private void applySettings(Obfuscator obfuscator, List<Map.Entry<String, String>> settings) {
+        for (Map.Entry<String, String> parameter : settings) {
+            switch (parameter.getKey()) {
+                case "method" -> {
+                    ObfData obfData = obfuscator.getNodeObfDataMap().get(parameter.getValue());
+                    if (obfData != null) {
+                        obfData.setNameObfuscation(true);
+                    }
+                }
+                case "field" -> {
+                    ObfData obfData = obfuscator.getFieldNodeObfDataMap().get(parameter.getValue());
+                    if (obfData != null) {
+                        obfData.setXorObfuscation(true);
+                    }
+                }
+                case "rule" -> {
+                    // Already applied while loading
+                }
+                case "profile" -> obfuscator.setProfile(loadProfile(parameter.getValue()));
+                case "verify" -> obfuscator.setVerifyOutput(Boolean.parseBoolean(parameter.getValue()));
+                default -> throw new IllegalArgumentException("Unknown setting: " + parameter.getKey());
+            }
+        }
+    }
+
+    /**
+     * Loads a profile from the profile directory. Names that leave the directory, and files that
+     * cannot be parsed, are rejected without echoing any of their content back to the client.
+     */
+    private HotMethodProfile loadProfile(String name) {
+        Path directory = profileDirectory;
+        if (directory == null) {
+            throw new IllegalArgumentException("Profiles are not enabled on this service");
+        }
+
+        Path profilePath;
+        try {
+            profilePath = directory.resolve(name).toRealPath();
+        } catch (IOException | InvalidPathException e) {
+            throw new IllegalArgumentException("Profile not found: " + name);
+        }
+        if (!profilePath.startsWith(directory) || !Files.isRegularFile(profilePath)) {
+            throw new IllegalArgumentException("Profile not found: " + name);
+        }
+
+        try {
+            return HotMethodProfile.load(profilePath);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Profile could not be read: " + name);
+        }
+    }
+
+    private static List<Map.Entry<String, String>> parseQuery(String rawQuery) {
+        List<Map.Entry<String, String>> parameters = new ArrayList<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.add(Map.entry(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8)));
+        }
+        return parameters;
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = nanos;
+    }
+
+    /**
+     * Returns the most recent latency samples, sorted ascending.
+     */
+    private synchronized long[] latencySnapshot() {
+        long[] snapshot = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+        Arrays.sort(snapshot);
+        return snapshot;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Failed to delete temporary file: " + path);
+        }
+    }
+
+}
@@ -1,8 +1,14 @@
 package me.yattaw.project.plproject.ui;
 
+import me.yattaw.project.plproject.obf.BytecodeDiff;
+import me.yattaw.project.plproject.obf.HotMethodProfile;
 import me.yattaw.project.plproject.obf.JarHandler;
 import me.yattaw.project.plproject.obf.ObfData;
+import me.yattaw.project.plproject.obf.ObfuscationJob;
+import me.yattaw.project.plproject.obf.ObfuscationScheduler;
 import me.yattaw.project.plproject.obf.Obfuscator;
+import me.yattaw.project.plproject.obf.RuleSet;
+import me.yattaw.project.plproject.obf.VerificationException;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -12,22 +18,37 @@ import org.objectweb.asm.util.TraceMethodVisitor;
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import java.awt.*;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class PLProjectUIManager {
 
     private final JTabbedPane tabbedPane = new JTabbedPane();
     private final AtomicReference<String> jarPath = new AtomicReference<>();
-    private final Obfuscator obfuscator = new Obfuscator();
+    private Obfuscator obfuscator = new Obfuscator(); // Replaced per loaded jar so queued jobs keep their own selections
     private final JarHandler jarHandler = new JarHandler();
     private final Map<String, Component> openTabs = new HashMap<>(); // Track open tabs
+    private static final int DEFAULT_MAX_CONCURRENT_JOBS = 2;
+    private static final int MAX_CONCURRENT_JOBS_LIMIT = 16;
+    private final ObfuscationScheduler scheduler = new ObfuscationScheduler(loadMaxConcurrentJobs());
+    private final JPanel jobsPanel = new JPanel();
+    // Dependencies of the loaded jar, so library types resolve when frames are computed
+    private List<Path> libraryClasspath = List.of();
+    // Reverse name mapping of the job that wrote each jar's current output, only touched on the EDT
+    private final Map<String, Map<String, String>> outputMappings = new HashMap<>();
 
     public PLProjectUIManager() {
         JFrame frame = new JFrame("PLProject Obfuscator");
@@ -53,6 +74,19 @@ public class PLProjectUIManager {
         JButton uploadJarButton = new JButton("Upload JAR");
         buttonPanel.add(uploadJarButton, BorderLayout.CENTER);
 
+        // Low-memory mode only keeps member names, so it has to be chosen before loading
+        JCheckBox lowMemoryMode = new JCheckBox("Low-memory mode");
+        lowMemoryMode.addActionListener(e -> obfuscator.setLowMemoryMode(lowMemoryMode.isSelected()));
+        buttonPanel.add(lowMemoryMode, BorderLayout.EAST);
+
+        JButton loadRulesButton = new JButton("Load Rules");
+        JButton librariesButton = new JButton("Libraries");
+        librariesButton.setToolTipText("Select the jars the loaded jar depends on");
+        JPanel loadPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        loadPanel.add(loadRulesButton);
+        loadPanel.add(librariesButton);
+        buttonPanel.add(loadPanel, BorderLayout.WEST);
+
         // Class Tree
         DefaultMutableTreeNode root = new DefaultMutableTreeNode("Classes");
         JTree classTree = new JTree(root);
@@ -60,6 +94,8 @@ public class PLProjectUIManager {
 
         // Add event listeners
         uploadJarButton.addActionListener(e -> handleUploadButton(root, classTree));
+        loadRulesButton.addActionListener(e -> handleLoadRulesButton(root, classTree));
+        librariesButton.addActionListener(e -> handleLibrariesButton(root, classTree));
         classTree.addTreeSelectionListener(e -> handleClassTreeSelection(classTree));
 
         leftPanel.add(buttonPanel, BorderLayout.NORTH);
@@ -76,25 +112,151 @@ public class PLProjectUIManager {
         obfuscateButton.setEnabled(true); // Set enabled since obfuscation can always occur
         obfuscateButton.addActionListener(e -> handleObfuscateButton());
 
+        // Diff Button
+        JButton diffButton = new JButton("View Diff");
+        diffButton.addActionListener(e -> handleDiffButton(diffButton));
+
+        // Verify Output Checkbox
+        JCheckBox verifyOutput = new JCheckBox("Verify output");
+        verifyOutput.addActionListener(e -> obfuscator.setVerifyOutput(verifyOutput.isSelected()));
+
+        // Concurrency limit for obfuscation jobs
+        JSpinner parallelJobs = new JSpinner(new SpinnerNumberModel(scheduler.getMaxConcurrentJobs(), 1, MAX_CONCURRENT_JOBS_LIMIT, 1));
+        parallelJobs.setToolTipText("Parallel jobs");
+        parallelJobs.addChangeListener(e -> scheduler.setMaxConcurrentJobs((Integer) parallelJobs.getValue()));
+
+        // Execution profile to keep hot methods lightly transformed
+        JButton loadProfileButton = new JButton("Load Profile");
+        loadProfileButton.addActionListener(e -> handleLoadProfileButton());
+
+        JPanel optionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        optionsPanel.add(verifyOutput);
+        optionsPanel.add(parallelJobs);
+        optionsPanel.add(loadProfileButton);
+
+        JPanel actionPanel = new JPanel(new BorderLayout());
+        actionPanel.add(optionsPanel, BorderLayout.WEST);
+        actionPanel.add(obfuscateButton, BorderLayout.CENTER);
+        actionPanel.add(diffButton, BorderLayout.EAST);
+
+        // Running and queued jobs are listed above the action buttons
+        jobsPanel.setLayout(new BoxLayout(jobsPanel, BoxLayout.Y_AXIS));
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(jobsPanel, BorderLayout.CENTER);
+        southPanel.add(actionPanel, BorderLayout.SOUTH);
+
         rightPanel.add(tabbedPane, BorderLayout.CENTER);
-        rightPanel.add(obfuscateButton, BorderLayout.SOUTH);
+        rightPanel.add(southPanel, BorderLayout.SOUTH);
         return rightPanel;
     }
 
+    private static int loadMaxConcurrentJobs() {
+        Properties config = new Properties();
+        try (InputStream is = PLProjectUIManager.class.getResourceAsStream("/config.properties")) {
+            if (is != null) {
+                config.load(is);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        String value = config.getProperty("maxConcurrentJobs");
+        if (value == null) {
+            return DEFAULT_MAX_CONCURRENT_JOBS;
+        }
+        try {
+            int maxConcurrentJobs = Integer.parseInt(value.trim());
+            if (maxConcurrentJobs >= 1 && maxConcurrentJobs <= MAX_CONCURRENT_JOBS_LIMIT) {
+                return maxConcurrentJobs;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        System.err.println("Invalid maxConcurrentJobs '" + value + "' in config.properties, expected 1 to "
+                + MAX_CONCURRENT_JOBS_LIMIT + ", using " + DEFAULT_MAX_CONCURRENT_JOBS);
+        return DEFAULT_MAX_CONCURRENT_JOBS;
+    }
+
     private void handleUploadButton(DefaultMutableTreeNode root, JTree classTree) {
         JFileChooser fileChooser = new JFileChooser();
         if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
             jarPath.set(fileChooser.getSelectedFile().getAbsolutePath());
+            loadJar(root, classTree);
+        }
+    }
+
+    private void handleLoadRulesButton(DefaultMutableTreeNode root, JTree classTree) {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
             try {
-                jarHandler.loadClassesFromJar(obfuscator, root, classTree, jarPath.get());
-            } catch (IOException ex) {
+                obfuscator.setRuleSet(RuleSet.load(fileChooser.getSelectedFile().toPath()));
+            } catch (IOException | IllegalArgumentException ex) {
                 ex.printStackTrace();
-                JOptionPane.showMessageDialog(null, "Failed to load JAR: " + ex.getMessage(),
+                JOptionPane.showMessageDialog(null, "Failed to load rules: " + ex.getMessage(),
                         "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            // Rules are resolved while loading, so reload the current jar to apply them
+            if (jarPath.get() != null) {
+                loadJar(root, classTree);
             }
         }
     }
 
+    private void handleLibrariesButton(DefaultMutableTreeNode root, JTree classTree) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+            List<Path> libraries = new ArrayList<>();
+            for (File file : fileChooser.getSelectedFiles()) {
+                libraries.add(file.toPath());
+            }
+            libraryClasspath = List.copyOf(libraries);
+
+            // Library types are resolved lazily into the hierarchy, so reload the current jar with a fresh one
+            if (jarPath.get() != null) {
+                loadJar(root, classTree);
+            }
+        }
+    }
+
+    private void handleLoadProfileButton() {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+            try {
+                HotMethodProfile profile = HotMethodProfile.load(fileChooser.getSelectedFile().toPath());
+                obfuscator.setProfile(profile);
+                JOptionPane.showMessageDialog(null, "Loaded profile with " + profile.getTotalSamples() + " samples.",
+                        "Profile", JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException | IllegalArgumentException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Failed to load profile: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private void loadJar(DefaultMutableTreeNode root, JTree classTree) {
+        // Start from a fresh obfuscator so jobs of the previous jar are unaffected
+        Obfuscator previous = obfuscator;
+        obfuscator = new Obfuscator();
+        obfuscator.setLowMemoryMode(previous.isLowMemoryMode());
+        obfuscator.setVerifyOutput(previous.isVerifyOutput());
+        obfuscator.setRuleSet(previous.getRuleSet());
+        obfuscator.setProfile(previous.getProfile());
+        obfuscator.getClassHierarchy().setLibraryClasspath(libraryClasspath);
+        try {
+            jarHandler.loadClassesFromJar(obfuscator, root, classTree, jarPath.get());
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Failed to load JAR: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     private void handleClassTreeSelection(JTree classTree) {
         DefaultMutableTreeNode selectedNode =
                 (DefaultMutableTreeNode) classTree.getLastSelectedPathComponent();
@@ -107,15 +269,236 @@ public class PLProjectUIManager {
     }
 
     private void handleObfuscateButton() {
-        if (jarPath.get() != null) {
-            if (obfuscator.obfuscateJar(jarPath.get())) {
+        if (jarPath.get() == null) {
+            JOptionPane.showMessageDialog(null, "No JAR file selected for obfuscation.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        String path = jarPath.get();
+        JLabel nameLabel = new JLabel(new File(path).getName() + " ");
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setStringPainted(true);
+        progressBar.setString("Queued");
+        JButton cancelButton = new JButton("Cancel");
+
+        JPanel jobRow = new JPanel(new BorderLayout());
+        jobRow.add(nameLabel, BorderLayout.WEST);
+        jobRow.add(progressBar, BorderLayout.CENTER);
+        jobRow.add(cancelButton, BorderLayout.EAST);
+
+        ObfuscationJob job;
+        try {
+            // The listener is called from the worker thread, so hop onto the EDT before touching Swing.
+            // The state is captured now, as the job may have finished by the time the EDT runs the update,
+            // and each terminal state must only be handled by the notification that reported it
+            job = scheduler.submit(path, obfuscator, updated -> {
+                ObfuscationJob.State state = updated.getState();
+                SwingUtilities.invokeLater(() -> updateJobRow(updated, state, progressBar, cancelButton));
+            });
+        } catch (IllegalStateException ex) {
+            JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        cancelButton.addActionListener(e -> {
+            if (job.isDone()) {
+                jobsPanel.remove(jobRow);
+                jobsPanel.revalidate();
+                jobsPanel.repaint();
+            } else {
+                job.cancel();
+            }
+        });
+
+        jobsPanel.add(jobRow);
+        jobsPanel.revalidate();
+    }
+
+    private void updateJobRow(ObfuscationJob job, ObfuscationJob.State state, JProgressBar progressBar, JButton cancelButton) {
+        switch (state) {
+            case QUEUED -> progressBar.setString("Queued");
+            case RUNNING -> {
+                progressBar.setMaximum(Math.max(1, job.getTotalClasses()));
+                progressBar.setValue(job.getProcessedClasses());
+                long eta = job.getEtaSeconds();
+                progressBar.setString(String.format("%d/%d classes, %.0f classes/s, ETA %s",
+                        job.getProcessedClasses(), job.getTotalClasses(), job.getThroughput(),
+                        eta < 0 ? "-" : eta + "s"));
+            }
+            case COMPLETED -> {
+                progressBar.setValue(progressBar.getMaximum());
+                progressBar.setString("Completed");
+                cancelButton.setText("Remove");
+                outputMappings.put(job.getJarPath(), job.getObfuscator().getReverseNameMapping());
+                if (job.getObfuscator().getProfileReport() != null) {
+                    createProfileReportTab(job.getObfuscator().getProfileReport());
+                }
                 JOptionPane.showMessageDialog(null, "Obfuscation completed successfully!",
                         "Success", JOptionPane.INFORMATION_MESSAGE);
-                return;
+            }
+            case CANCELLED -> {
+                progressBar.setString("Cancelled");
+                cancelButton.setText("Remove");
+                outputMappings.remove(job.getJarPath());
+            }
+            case FAILED -> {
+                progressBar.setString("Failed");
+                cancelButton.setText("Remove");
+                outputMappings.remove(job.getJarPath());
+                if (job.getFailure() instanceof VerificationException ex) {
+                    JTextArea reportArea = new JTextArea(ex.getReport().toString(), 15, 60);
+                    reportArea.setEditable(false);
+                    JOptionPane.showMessageDialog(null, new JScrollPane(reportArea),
+                            "Verification Failed", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    job.getFailure().printStackTrace();
+                    JOptionPane.showMessageDialog(null, "Failed to obfuscate JAR: " + job.getFailure().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }
+    }
+
+    private void handleDiffButton(JButton diffButton) {
+        String originalPath = jarPath.get();
+        if (originalPath != null && scheduler.isActive(originalPath)) {
+            JOptionPane.showMessageDialog(null, "Wait for the running obfuscation of this JAR to finish.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        // The mapping must come from the job that wrote the output, not from the selections loaded now
+        Map<String, String> reverseMapping = originalPath != null ? outputMappings.get(originalPath) : null;
+        String outputPath = originalPath != null ? obfuscator.getOutputPath(originalPath) : null;
+        if (reverseMapping == null || !new File(outputPath).isFile()) {
+            JOptionPane.showMessageDialog(null, "Obfuscate a JAR before viewing the diff.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // Diffing large jars takes a while, so keep it off the EDT
+        diffButton.setEnabled(false);
+        BytecodeDiff bytecodeDiff = new BytecodeDiff(reverseMapping);
+        new SwingWorker<BytecodeDiff.JarDiff, Void>() {
+            @Override
+            protected BytecodeDiff.JarDiff doInBackground() throws IOException {
+                return bytecodeDiff.compare(originalPath, outputPath);
+            }
+
+            @Override
+            protected void done() {
+                diffButton.setEnabled(true);
+                try {
+                    createDiffTab(get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(null, "Failed to diff JAR: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void createDiffTab(BytecodeDiff.JarDiff jarDiff) {
+        JTextArea leftArea = new JTextArea();
+        JTextArea rightArea = new JTextArea();
+        leftArea.setEditable(false);
+        rightArea.setEditable(false);
+
+        JScrollPane leftScrollPane = new JScrollPane(leftArea);
+        JScrollPane rightScrollPane = new JScrollPane(rightArea);
+        rightScrollPane.getVerticalScrollBar().setModel(leftScrollPane.getVerticalScrollBar().getModel());
+
+        // Only the selected method is rendered, so the tab stays responsive for any number of changes
+        JList<BytecodeDiff.MethodDiff> methodList = new JList<>(jarDiff.getChangedMethods().toArray(new BytecodeDiff.MethodDiff[0]));
+        methodList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        methodList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && methodList.getSelectedValue() != null) {
+                renderMethodDiff(methodList.getSelectedValue(), leftArea, rightArea);
+            }
+        });
+        if (!jarDiff.getChangedMethods().isEmpty()) {
+            methodList.setSelectedIndex(0);
+        }
+
+        JSplitPane sidesPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, leftScrollPane, rightScrollPane);
+        sidesPane.setResizeWeight(0.5);
+        JSplitPane contentPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(methodList), sidesPane);
+        contentPane.setResizeWeight(0.3);
+
+        JPanel diffPanel = new JPanel(new BorderLayout());
+        diffPanel.add(new JLabel(jarDiff.getChangedMethods().size() + " of "
+                + jarDiff.getComparedMethods() + " methods changed"), BorderLayout.NORTH);
+        diffPanel.add(contentPane, BorderLayout.CENTER);
+
+        JButton exportButton = new JButton("Export Diff");
+        exportButton.addActionListener(e -> handleExportDiff(jarDiff));
+        diffPanel.add(exportButton, BorderLayout.SOUTH);
+
+        tabbedPane.addTab("Diff", diffPanel);
+        int index = tabbedPane.indexOfComponent(diffPanel);
+        tabbedPane.setTabComponentAt(index, new ClosableTabComponent(tabbedPane, "Diff"));
+        tabbedPane.setSelectedIndex(index);
+    }
+
+    private void renderMethodDiff(BytecodeDiff.MethodDiff methodDiff, JTextArea leftArea, JTextArea rightArea) {
+        StringBuilder leftText = new StringBuilder();
+        StringBuilder rightText = new StringBuilder();
+
+        // Pad both sides so each line of a hunk occupies the same row in the two panes
+        for (BytecodeDiff.Hunk hunk : methodDiff.getHunks()) {
+            leftText.append(hunk.getHeader()).append('\n');
+            rightText.append(hunk.getHeader()).append('\n');
+            for (BytecodeDiff.Line line : hunk.lines()) {
+                switch (line.operation()) {
+                    case EQUAL -> {
+                        leftText.append("  ").append(line.text()).append('\n');
+                        rightText.append("  ").append(line.text()).append('\n');
+                    }
+                    case DELETE -> {
+                        leftText.append("- ").append(line.text()).append('\n');
+                        rightText.append('\n');
+                    }
+                    case INSERT -> {
+                        leftText.append('\n');
+                        rightText.append("+ ").append(line.text()).append('\n');
+                    }
+                }
+            }
+        }
+        if (methodDiff.getHunks().isEmpty()) {
+            leftText.append("Renamed only, no instruction changes");
+        }
+
+        leftArea.setText(leftText.toString());
+        rightArea.setText(rightText.toString());
+        leftArea.setCaretPosition(0);
+        rightArea.setCaretPosition(0);
+    }
+
+    private void createProfileReportTab(HotMethodProfile.Report report) {
+        JTextArea reportArea = new JTextArea(report.toString());
+        reportArea.setEditable(false);
+        reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, reportArea.getFont().getSize()));
+
+        JScrollPane reportPanel = new JScrollPane(reportArea);
+        tabbedPane.addTab("Profile Report", reportPanel);
+        int index = tabbedPane.indexOfComponent(reportPanel);
+        tabbedPane.setTabComponentAt(index, new ClosableTabComponent(tabbedPane, "Profile Report"));
+    }
+
+    private void handleExportDiff(BytecodeDiff.JarDiff jarDiff) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("obfuscation.diff"));
+        if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+            try (PrintWriter writer = new PrintWriter(fileChooser.getSelectedFile())) {
+                jarDiff.export(writer);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Failed to export diff: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
-        JOptionPane.showMessageDialog(null, "No JAR file selected for obfuscation.",
-                "Error", JOptionPane.ERROR_MESSAGE);
     }
 
     private boolean isTabOpen(String tabIdentifier) {
@@ -228,6 +611,9 @@ public class PLProjectUIManager {
     }
 
     private String getMethodBytecode(MethodNode method) {
+        if (method == null) {
+            return "Bytecode is not kept in low-memory mode.";
+        }
         StringWriter stringWriter = new StringWriter();
         PrintWriter printWriter = new PrintWriter(stringWriter);
         TraceMethodVisitor traceMethodVisitor = new TraceMethodVisitor(new Textifier());
@@ -254,6 +640,9 @@ public class PLProjectUIManager {
     }
 
     private String getFieldBytecode(FieldNode field) {
+        if (field == null) {
+            return "Bytecode is not kept in low-memory mode.";
+        }
         // Example representation for field bytecode, customize as needed
         return "FieldNode Bytecode: " + field.name + " " + field.desc + " " + field.signature;
     }
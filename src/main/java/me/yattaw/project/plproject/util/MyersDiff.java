@@ -0,0 +1,223 @@
+package me.yattaw.project.plproject.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MyersDiff {
+
+    public enum Operation {
+        EQUAL, DELETE, INSERT
+    }
+
+    /**
+     * A single step of an edit script. {@code leftIndex} is -1 for inserts and
+     * {@code rightIndex} is -1 for deletes.
+     */
+    public record Edit(Operation operation, int leftIndex, int rightIndex) {
+    }
+
+    // Edit distance after which a range is split at the furthest point reached, bounds the worst case on unrelated input
+    private static final int MAX_EDIT_DISTANCE = 1024;
+
+    private final int[] left;
+    private final int[] right;
+    private final List<Edit> edits = new ArrayList<>();
+
+    private MyersDiff(int[] left, int[] right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Computes the shortest edit script between two token sequences using the
+     * linear-space variant of Myers' algorithm (middle snake bisection). Ranges that
+     * differ by more than {@value #MAX_EDIT_DISTANCE} edits are split at the furthest
+     * point reached and compared piecewise, so the script stays close to minimal
+     * without a quadratic worst case.
+     *
+     * @param left  Tokens of the original sequence.
+     * @param right Tokens of the modified sequence.
+     * @return Edit script in sequence order.
+     */
+    public static List<Edit> diff(int[] left, int[] right) {
+        MyersDiff diff = new MyersDiff(left, right);
+        diff.compare(0, left.length, 0, right.length);
+        return diff.edits;
+    }
+
+    private void compare(int leftStart, int leftEnd, int rightStart, int rightEnd) {
+        // Trim the common prefix
+        while (leftStart < leftEnd && rightStart < rightEnd && left[leftStart] == right[rightStart]) {
+            edits.add(new Edit(Operation.EQUAL, leftStart++, rightStart++));
+        }
+
+        // Trim the common suffix, emitted after the middle has been compared
+        int suffix = 0;
+        while (leftStart < leftEnd - suffix && rightStart < rightEnd - suffix
+                && left[leftEnd - suffix - 1] == right[rightEnd - suffix - 1]) {
+            suffix++;
+        }
+        leftEnd -= suffix;
+        rightEnd -= suffix;
+
+        if (leftStart == leftEnd) {
+            for (int i = rightStart; i < rightEnd; i++) {
+                edits.add(new Edit(Operation.INSERT, -1, i));
+            }
+        } else if (rightStart == rightEnd) {
+            for (int i = leftStart; i < leftEnd; i++) {
+                edits.add(new Edit(Operation.DELETE, i, -1));
+            }
+        } else {
+            bisect(leftStart, leftEnd, rightStart, rightEnd);
+        }
+
+        for (int i = 0; i < suffix; i++) {
+            edits.add(new Edit(Operation.EQUAL, leftEnd + i, rightEnd + i));
+        }
+    }
+
+    /**
+     * Finds the middle snake of the given ranges and recurses on both halves, so
+     * only O(N + M) working memory is live at any depth.
+     */
+    private void bisect(int leftStart, int leftEnd, int rightStart, int rightEnd) {
+        int leftLength = leftEnd - leftStart;
+        int rightLength = rightEnd - rightStart;
+        int maxD = (leftLength + rightLength + 1) / 2;
+        int offset = maxD;
+        int vLength = 2 * maxD + 2;
+
+        int[] forward = new int[vLength];
+        int[] reverse = new int[vLength];
+        Arrays.fill(forward, -1);
+        Arrays.fill(reverse, -1);
+        forward[offset + 1] = 0;
+        reverse[offset + 1] = 0;
+
+        int delta = leftLength - rightLength;
+        // If the total number of characters is odd, the front path will collide with the reverse path
+        boolean front = (delta & 1) != 0;
+
+        // Offsets for start and end of k loops, prevents mapping of space beyond the grid
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int reverseStart = 0;
+        int reverseEnd = 0;
+
+        int limit = Math.min(maxD, MAX_EDIT_DISTANCE);
+        for (int d = 0; d < limit; d++) {
+            // Walk the front path one step
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int kOffset = offset + k;
+                int x;
+                if (k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1])) {
+                    x = forward[kOffset + 1];
+                } else {
+                    x = forward[kOffset - 1] + 1;
+                }
+                int y = x - k;
+                while (x < leftLength && y < rightLength
+                        && left[leftStart + x] == right[rightStart + y]) {
+                    x++;
+                    y++;
+                }
+                forward[kOffset] = x;
+
+                if (x > leftLength) {
+                    forwardEnd += 2;
+                } else if (y > rightLength) {
+                    forwardStart += 2;
+                } else if (front) {
+                    int reverseOffset = offset + delta - k;
+                    if (reverseOffset >= 0 && reverseOffset < vLength && reverse[reverseOffset] != -1) {
+                        // Mirror the reverse x onto the front coordinate system
+                        if (x >= leftLength - reverse[reverseOffset]) {
+                            split(leftStart, leftEnd, rightStart, rightEnd, x, y);
+                            return;
+                        }
+                    }
+                }
+            }
+
+            // Walk the reverse path one step
+            for (int k = -d + reverseStart; k <= d - reverseEnd; k += 2) {
+                int kOffset = offset + k;
+                int x;
+                if (k == -d || (k != d && reverse[kOffset - 1] < reverse[kOffset + 1])) {
+                    x = reverse[kOffset + 1];
+                } else {
+                    x = reverse[kOffset - 1] + 1;
+                }
+                int y = x - k;
+                while (x < leftLength && y < rightLength
+                        && left[leftEnd - x - 1] == right[rightEnd - y - 1]) {
+                    x++;
+                    y++;
+                }
+                reverse[kOffset] = x;
+
+                if (x > leftLength) {
+                    reverseEnd += 2;
+                } else if (y > rightLength) {
+                    reverseStart += 2;
+                } else if (!front) {
+                    int forwardOffset = offset + delta - k;
+                    if (forwardOffset >= 0 && forwardOffset < vLength && forward[forwardOffset] != -1) {
+                        int forwardX = forward[forwardOffset];
+                        int forwardY = offset + forwardX - forwardOffset;
+                        if (forwardX >= leftLength - x) {
+                            split(leftStart, leftEnd, rightStart, rightEnd, forwardX, forwardY);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Too expensive to finish, split at the furthest point either path reached and recurse so
+        // common runs on both sides are still found, each side being at most limit edits away
+        int bestX = -1;
+        int bestY = -1;
+        int bestReach = 0;
+        for (int k = -limit; k <= limit; k++) {
+            int kOffset = offset + k;
+            if (kOffset < 0 || kOffset >= vLength) {
+                continue;
+            }
+            int x = forward[kOffset];
+            int y = x - k;
+            if (x != -1 && y >= 0 && x <= leftLength && y <= rightLength && x + y > bestReach) {
+                bestX = x;
+                bestY = y;
+                bestReach = x + y;
+            }
+            x = reverse[kOffset];
+            y = x - k;
+            if (x != -1 && y >= 0 && x <= leftLength && y <= rightLength && x + y > bestReach) {
+                bestX = leftLength - x;
+                bestY = rightLength - y;
+                bestReach = x + y;
+            }
+        }
+        if (bestReach > 0 && bestReach < leftLength + rightLength) {
+            split(leftStart, leftEnd, rightStart, rightEnd, bestX, bestY);
+            return;
+        }
+
+        // No commonality at all, the whole range is replaced
+        for (int i = leftStart; i < leftEnd; i++) {
+            edits.add(new Edit(Operation.DELETE, i, -1));
+        }
+        for (int i = rightStart; i < rightEnd; i++) {
+            edits.add(new Edit(Operation.INSERT, -1, i));
+        }
+    }
+
+    private void split(int leftStart, int leftEnd, int rightStart, int rightEnd, int x, int y) {
+        compare(leftStart, leftStart + x, rightStart, rightStart + y);
+        compare(leftStart + x, leftEnd, rightStart + y, rightEnd);
+    }
+
+}
@@ -0,0 +1,118 @@
+package me.yattaw.project.plproject.obf;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleSetTest {
+
+    private static final String[] OWNERS = {"**", "com/**", "com/example/*", "com/example/api/**",
+            "re:com/.*/Impl", "com.example.impl.Impl", "*/example/**"};
+    private static final String[] NAMES = {"*", "get*", "*Value", "re:.*Callback", "re:get.*", "re:.*Val.*",
+            "getValue", "g?t*", "re:set[A-Z].*", "*Thing", "<init>"};
+    private static final String[] DESCS = {"*", "()I", "(*", "re:\\(\\).*"};
+    private static final String[] ACTIONS = {"include", "exclude", "keep"};
+    private static final String[] KINDS = {"method", "field", "member"};
+
+    private static final String[] CLASSES = {"com/example/api/Api", "com/example/impl/Impl", "org/x/Y", "com/example/Z"};
+    private static final String[] MEMBER_NAMES = {"getValue", "getThing", "setX", "onCallback", "<init>", "value",
+            "gotValue", "Callback", "get"};
+    private static final String[] MEMBER_DESCS = {"()I", "(I)V", "I"};
+
+    /**
+     * The indexed rule set must resolve every member exactly like evaluating each rule on its own
+     * and merging the results: keep wins, then excludes win over includes.
+     */
+    @Test
+    void indexedRulesMatchEachRuleEvaluatedAlone() {
+        Random random = new Random(3);
+        // Enough rules per set to exceed the direct rule limit and go through the name index
+        for (int round = 0; round < 200; round++) {
+            List<String> lines = new ArrayList<>();
+            int count = 1 + random.nextInt(16);
+            for (int i = 0; i < count; i++) {
+                lines.add(pick(random, ACTIONS) + " " + pick(random, KINDS)
+                        + " owner=" + pick(random, OWNERS) + " name=" + pick(random, NAMES)
+                        + " desc=" + pick(random, DESCS) + (random.nextBoolean() ? " access=public" : ""));
+            }
+
+            RuleSet ruleSet = RuleSet.compile(lines);
+            for (String owner : CLASSES) {
+                RuleSet.ClassRules classRules = ruleSet.forClass(owner);
+                for (String name : MEMBER_NAMES) {
+                    for (String desc : MEMBER_DESCS) {
+                        for (int access : new int[]{Opcodes.ACC_PUBLIC, Opcodes.ACC_PRIVATE}) {
+                            assertSameSelection(lines, owner, classRules, name, desc, access, true);
+                            assertSameSelection(lines, owner, classRules, name, desc, access, false);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertSameSelection(List<String> lines, String owner, RuleSet.ClassRules classRules,
+                                            String name, String desc, int access, boolean method) {
+        int include = 0;
+        int exclude = 0;
+        boolean keep = false;
+        for (String line : lines) {
+            RuleSet.Selection single = resolve(RuleSet.compile(List.of(line)).forClass(owner), name, desc, access, method);
+            keep |= line.startsWith("keep") && single.exclude() != 0;
+            include |= single.include();
+            exclude |= single.exclude();
+        }
+
+        RuleSet.Selection selection = resolve(classRules, name, desc, access, method);
+        String member = owner + "." + name + desc + " in " + lines;
+        assertEquals(keep ? 0 : include & ~exclude, selection.transforms(), member);
+        if (keep) {
+            assertEquals(0, selection.include(), member);
+        }
+    }
+
+    @Test
+    void methodAndFieldFlagsSharingBitsAreResolvedPerKind() {
+        RuleSet ruleSet = RuleSet.compile(List.of(
+                "include method access=bridge",
+                "include field access=volatile"));
+        RuleSet.ClassRules classRules = ruleSet.forClass("a/B");
+
+        // 0x40 is ACC_BRIDGE on methods and ACC_VOLATILE on fields
+        assertEquals(RuleSet.NAME, classRules.resolveMethod("m", "()V", Opcodes.ACC_BRIDGE).transforms());
+        assertEquals(RuleSet.XOR, classRules.resolveField("f", "I", Opcodes.ACC_VOLATILE).transforms());
+        assertEquals(0, classRules.resolveMethod("m", "()V", Opcodes.ACC_VARARGS).transforms());
+    }
+
+    @Test
+    void kindSpecificFlagNarrowsMemberRule() {
+        RuleSet.ClassRules classRules = RuleSet.compile(List.of("exclude member access=transient")).forClass("a/B");
+
+        // A varargs method has the transient bit set but must not match a transient rule
+        assertEquals(0, classRules.resolveMethod("m", "([I)V", Opcodes.ACC_VARARGS).exclude());
+        assertNotEquals(0, classRules.resolveField("f", "I", Opcodes.ACC_TRANSIENT).exclude());
+    }
+
+    @Test
+    void flagOfTheOtherKindIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RuleSet.compile(List.of("include method access=volatile")));
+        assertThrows(IllegalArgumentException.class, () -> RuleSet.compile(List.of("include field access=!varargs")));
+        assertThrows(IllegalArgumentException.class,
+                () -> RuleSet.compile(List.of("include member access=bridge,transient")));
+    }
+
+    private static RuleSet.Selection resolve(RuleSet.ClassRules classRules, String name, String desc, int access,
+                                             boolean method) {
+        return method ? classRules.resolveMethod(name, desc, access) : classRules.resolveField(name, desc, access);
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+}